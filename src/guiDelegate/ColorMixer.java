@@ -1,60 +1,124 @@
-package guiDelegate;
-
-/**
- * A color mixer class for the MandelbrotGui.
- * @author 170018405
- * @version 0.1
- */
-public class ColorMixer
-{
-    public static final int RED = 0;
-    public static final int BLUE = 1;
-    public static final int GREEN = 2;
-    public static final int BANDED_GREEN = 3;
-    public static final int colorOptions = 5;
-
-    /**
-     * The maximum iterations used to render the Mandelbrot Set
-     */
-    private int maxIterations;
-
-    /**
-     * Constructs a ColorMixer object.
-     * @param maxIterations the maximum number of iterations used to iterate the
-	 * complex formula
-     */
-    public ColorMixer(int maxIterations)
-    {
-        this.maxIterations = maxIterations;
-    }
-
-    /**
-     * This method returns an RGB color using the number of iterations made,
-     * and a color scheme choice from one of the static colors defined in the
-     * class fields. The integers 0 returns a red color scheme , 1 returns a
-     * blue color scheme, 2 returns a green color scheme, 3 represents a banded
-     * green scheme and any other number just returns a default color
-     * calculated using the formula: 256 * max iterations / iterations made.
-     * @param iterationsMade the number of iterations made before z escapes the
-     * radius
-     * @param colorChoice an iteger representing one of the
-     * statically defined colors of this class. i.e. RED, BLUE, GREEN,
-     * BANDED_GREEN, or the default color scheme
-     * @return an RGB value
-     */
-    public int getColor(int iterationsMade, int colorChoice)
-    {
-        // make a default color using the equation 256 * maxIterations / iterations made
-        int color = (256 *  maxIterations / iterationsMade);
-
-        // based on colorChoice, return an integer that changes based on the iterations made, or return the default color.
-        switch(colorChoice)
-        {
-            case 0: return (5 * iterationsMade << 17);
-            case 1: return (int) (2 * iterationsMade * 256 / 4.0 + 200);
-            case 2: return (2 * iterationsMade << 11);
-            case 3: return (2 * iterationsMade << 14);
-            default: return (color);
-        }
-    }
-}
+package guiDelegate;
+
+import model.SupersampledSet;
+
+/**
+ * A color mixer class for the MandelbrotGui.
+ * @author 170018405
+ * @version 0.1
+ */
+public class ColorMixer
+{
+    public static final int RED = 0;
+    public static final int BLUE = 1;
+    public static final int GREEN = 2;
+    public static final int BANDED_GREEN = 3;
+    public static final int colorOptions = 5;
+
+    /**
+     * The maximum iterations used to render the Mandelbrot Set
+     */
+    private int maxIterations;
+
+    /**
+     * Constructs a ColorMixer object.
+     * @param maxIterations the maximum number of iterations used to iterate the
+	 * complex formula
+     */
+    public ColorMixer(int maxIterations)
+    {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * This method returns an RGB color using the number of iterations made,
+     * and a color scheme choice from one of the static colors defined in the
+     * class fields. The integers 0 returns a red color scheme , 1 returns a
+     * blue color scheme, 2 returns a green color scheme, 3 represents a banded
+     * green scheme and any other number just returns a default color
+     * calculated using the formula: 256 * max iterations / iterations made.
+     * @param iterationsMade the number of iterations made before z escapes the
+     * radius
+     * @param colorChoice an iteger representing one of the
+     * statically defined colors of this class. i.e. RED, BLUE, GREEN,
+     * BANDED_GREEN, or the default color scheme
+     * @return an RGB value
+     */
+    public int getColor(int iterationsMade, int colorChoice)
+    {
+        // make a default color using the equation 256 * maxIterations / iterations made
+        int color = (256 *  maxIterations / iterationsMade);
+
+        // based on colorChoice, return an integer that changes based on the iterations made, or return the default color.
+        switch(colorChoice)
+        {
+            case 0: return (5 * iterationsMade << 17);
+            case 1: return (int) (2 * iterationsMade * 256 / 4.0 + 200);
+            case 2: return (2 * iterationsMade << 11);
+            case 3: return (2 * iterationsMade << 14);
+            default: return (color);
+        }
+    }
+
+    /**
+     * This method returns the RGB colors of every number of iterations from 0
+     * to maxIterations, so that a whole set can be colored by looking colors
+     * up instead of calling getColor for every pixel. Pixels which reached
+     * maxIterations are black, as is 0, which escaping pixels never take.
+     * A negative maxIterations gives a palette of black alone.
+     * @param colorChoice an iteger representing one of the
+     * statically defined colors of this class
+     * @return the palette, indexed by iterations made
+     */
+    public int[] getPalette(int colorChoice)
+    {
+        int[] palette = new int[Math.max(maxIterations, 0) + 1];
+        for (int iterations = 1; iterations < maxIterations; iterations++)
+        {
+            palette[iterations] = getColor(iterations, colorChoice);
+        }
+        return palette;
+    }
+
+    /**
+     * This method colors a supersampled set, returning the RGB color of every
+     * pixel row by row. Pixels are colored as by getPalette, except edge
+     * pixels, which take the average red, green and blue of their samples.
+     * Values outside the palette are colored as its nearest end.
+     * @param set the supersampled set to color
+     * @param colorChoice an iteger representing one of the
+     * statically defined colors of this class
+     * @return the RGB colors of the pixels, row by row
+     */
+    public int[] getPixels(SupersampledSet set, int colorChoice)
+    {
+        int[] palette = getPalette(colorChoice);
+        int cap = palette.length - 1;
+        int[][] values = set.getSet();
+        int width = values[0].length;
+        int[] pixels = new int[values.length * width];
+        for (int y = 0; y < values.length; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                pixels[y * width + x] = palette[Math.max(0, Math.min(values[y][x], cap))] & 0xffffff;
+            }
+        }
+        int count = set.getFactor() * set.getFactor();
+        for (int e = 0; e < set.getEdgeCount(); e++)
+        {
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int s = 0; s < count; s++)
+            {
+                int color = palette[Math.max(0, Math.min(set.getSample(e, s), cap))];
+                red += color >> 16 & 0xff;
+                green += color >> 8 & 0xff;
+                blue += color & 0xff;
+            }
+            pixels[set.getEdgePixel(e)] = (red / count) << 16 | (green / count) << 8 | blue / count;
+        }
+        return pixels;
+    }
+}
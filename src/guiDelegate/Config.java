@@ -9,6 +9,8 @@ package guiDelegate;
  * generated in pixels
  * GRAPHIC_HEIGHT: The height of the JPanel and inital MandelbrotSet y
  * resolution
+ * TILE_STORE_DIRECTORY: The directory cached tiles are kept in between runs
+ * TILE_STORE_CAP: The most bytes of cached tiles kept on disk
  * @author 170018405
  * @version 0.1
  */
@@ -17,4 +19,7 @@ public class Config
 	public static final double MOUSE_SENS = 1;
 	public static final int GRAPHIC_WIDTH = 600;
 	public static final int GRAPHIC_HEIGHT = 600;
+	public static final String TILE_STORE_DIRECTORY =
+	System.getProperty("user.home") + "/.mandelbrot/tiles";
+	public static final long TILE_STORE_CAP = 256L * 1024 * 1024;
 }
@@ -0,0 +1,193 @@
+package guiDelegate;
+
+import model.MandelbrotState;
+import model.RenderJournal;
+import model.SupersampledSet;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class exports a view of the Mandelbrot Set as a PNG image of any
+ * size, using memory for only a few strips of the image however big it is.
+ *
+ * The image is cut into horizontal strips of about STRIP_PIXELS pixels.
+ * Each strip is rendered as a view of its own, colored through the
+ * ColorMixer, and streamed into a PngStreamWriter over a FileChannel. Up to
+ * STRIPS_AHEAD strips are rendered in parallel while the writer compresses
+ * the strip before them. Edge supersampling, when asked for, works within
+ * each strip.
+ *
+ * A long export may be given a checkpoint file, a RenderJournal keeping the
+ * iteration values of each finished strip. Exporting the same view again
+ * with the same file then reads those strips back rather than rendering
+ * them, so only the strip in progress is lost when an export is stopped.
+ * Strips are then rendered one at a time, each in parallel, so that there
+ * is only ever one strip in progress.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+public class ImageExporter
+{
+	/**
+	 * The number of pixels in a strip, roughly.
+	 */
+	public static final int STRIP_PIXELS = 1 << 20;
+
+	/**
+	 * The most strips rendered ahead of the writer.
+	 */
+	private static final int STRIPS_AHEAD = Math.max(2,
+	Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Exports a view as a PNG image, replacing the file if it exists.
+	 *
+	 * @param view the view to export; its resolution is ignored
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @param colorChoice the ColorMixer scheme to color the image with
+	 * @param factor the number of samples across and down each edge pixel,
+	 * 1 for no supersampling
+	 * @param file the file to write the image to
+	 * @throws IllegalArgumentException if the size or factor is not positive
+	 * @throws IOException if the file cannot be written, or the export is
+	 * interrupted
+	 */
+	public static void export(MandelbrotState view, int width, int height,
+	int colorChoice, int factor, Path file)
+	throws IllegalArgumentException, IOException
+	{
+		export(view, width, height, colorChoice, factor, file, null);
+	}
+
+	/**
+	 * Exports a view as a PNG image, replacing the file if it exists, and
+	 * keeping the finished strips in a checkpoint file from which a stopped
+	 * export of the same view and size is resumed.
+	 *
+	 * @param view the view to export; its resolution is ignored
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @param colorChoice the ColorMixer scheme to color the image with
+	 * @param factor the number of samples across and down each edge pixel,
+	 * 1 for no supersampling
+	 * @param file the file to write the image to
+	 * @param checkpoint the checkpoint file, or null for none
+	 * @throws IllegalArgumentException if the size or factor is not positive
+	 * @throws IOException if the file or checkpoint cannot be written, the
+	 * checkpoint is that of another export, or the export is interrupted
+	 */
+	public static void export(MandelbrotState view, int width, int height,
+	int colorChoice, int factor, Path file, Path checkpoint)
+	throws IllegalArgumentException, IOException
+	{
+		if (factor < 1)
+		{
+			throw new IllegalArgumentException("Supersampling factor must be "
+			+ "positive");
+		}
+		int stripHeight = Math.max(1, Math.min(height, STRIP_PIXELS / width));
+		int ahead = checkpoint == null ? STRIPS_AHEAD : 1;
+		MandelbrotState image = new MandelbrotState(view);
+		image.setXRes(width);
+		image.setYRes(height);
+		RenderJournal journal = checkpoint == null ? null : new RenderJournal(
+		checkpoint, image, width, height);
+		ExecutorService pool = Executors.newFixedThreadPool(ahead,
+		runnable ->
+		{
+			Thread thread = new Thread(runnable, "Mandelbrot export");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Deque<Future<int[]>> strips = new ArrayDeque<>();
+		try (FileChannel channel = FileChannel.open(file,
+		StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		StandardOpenOption.TRUNCATE_EXISTING);
+		PngStreamWriter writer = new PngStreamWriter(channel, width, height))
+		{
+			int next = 0;
+			for (int y = 0; y < height; y += stripHeight)
+			{
+				// keep STRIPS_AHEAD strips rendering ahead of this one
+				for (; next < height && strips.size() < ahead;
+				next += stripHeight)
+				{
+					int y0 = next;
+					int rows = Math.min(stripHeight, height - y0);
+					strips.add(pool.submit(() -> renderStrip(image, y0, rows,
+					colorChoice, factor, journal)));
+				}
+				writer.writeRows(strips.remove().get(), Math.min(stripHeight,
+				height - y));
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Strip failed to render", e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export interrupted");
+		}
+		finally
+		{
+			pool.shutdownNow();
+			if (journal != null) journal.close();
+		}
+	}
+
+	/**
+	 * Renders and colors the rows y0 to y0 + rows - 1 of the image, reading
+	 * the strip's iteration values from the journal if it has them, and
+	 * adding them to it if not.
+	 *
+	 * @return the RGB colors of the strip, row after row
+	 */
+	private static int[] renderStrip(MandelbrotState image, int y0, int rows,
+	int colorChoice, int factor, RenderJournal journal) throws IOException
+	{
+		int width = image.getXRes();
+		MandelbrotState strip = image.getRegionState(0, y0, width, y0 + rows);
+		int[][] set;
+		int[] values = journal == null ? null : journal.get(0, y0, width,
+		rows);
+		if (values != null)
+		{
+			set = new int[rows][width];
+			for (int y = 0; y < rows; y++)
+			{
+				System.arraycopy(values, y * width, set[y], 0, width);
+			}
+		}
+		else
+		{
+			set = strip.getMandelbrotSet();
+			if (journal != null)
+			{
+				values = new int[rows * width];
+				for (int y = 0; y < rows; y++)
+				{
+					System.arraycopy(set[y], 0, values, y * width, width);
+				}
+				journal.put(0, y0, width, rows, values);
+			}
+		}
+		SupersampledSet sampled = strip.supersample(set, factor,
+		SupersampledSet.DEFAULT_THRESHOLD);
+		return new ColorMixer(strip.getMaxIterations()).getPixels(sampled,
+		colorChoice);
+	}
+}
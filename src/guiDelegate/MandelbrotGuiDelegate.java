@@ -10,9 +10,10 @@ import javax.swing.JOptionPane;
 import javax.swing.JFileChooser;
 import javax.imageio.ImageIO;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import model.MandelbrotSetGenerator;
 import model.MandelbrotState;
-import javax.swing.JMenuBar;
 import javax.swing.JTextField;
 
 
@@ -38,7 +39,7 @@ public class MandelbrotGuiDelegate implements PropertyChangeListener
 	private MandelbrotSetGenerator model;
 
 	private JFrame mainFrame;
-	private JMenuBar menuBar;
+	private MyMenuBar menuBar;
 	private MyToolBar toolBar;
 	private MyGraphicalDisplayPanel graphicsPanel;
 
@@ -62,6 +63,12 @@ public class MandelbrotGuiDelegate implements PropertyChangeListener
 	 */
 	private int colorOption;
 
+	/**
+	 * Boolean variable used to keep track of whether opening the tile store
+	 * has been tried. It is only opened once cached tile rendering is used.
+	 */
+	private boolean tileStoreTried;
+
 	/**
 	 * Instantiates a new MandelbrotGuiDelegate object
 	 * @param model the Model to observe, render, and update according to user
@@ -70,6 +77,12 @@ public class MandelbrotGuiDelegate implements PropertyChangeListener
 	public MandelbrotGuiDelegate(MandelbrotSetGenerator model)
 	{
 		this.model = model;
+		/* render on the model's own thread, showing coarse previews, so the
+		event thread is never held up by a render; the previews use the same
+		kernel and precision as a full render and end with the same set */
+		model.setAsynchronous(true);
+		model.setProgressive(true);
+		model.setSpeculative(true);
 		setupComponents();
 		// add the delegate UI component as an observer of the model
 		model.addObserver(this);
@@ -190,6 +203,49 @@ public class MandelbrotGuiDelegate implements PropertyChangeListener
 		}
 	}
 
+	/**
+	 * Returns how the model renders the Mandelbrot set.
+	 *
+	 * @return one of the render modes defined in MandelbrotState
+	 */
+	public int getRenderMode()
+	{
+		return model.getState().getRenderMode();
+	}
+
+	/**
+	 * Changes how the model renders the Mandelbrot set, thus causing a
+	 * re-render of the Mandelbrot set.
+	 * Cached tile rendering opens the tile store on disk first.
+	 *
+	 * @param renderMode one of the render modes defined in MandelbrotState
+	 */
+	public void changeRenderMode(int renderMode)
+	{
+		if (renderMode == MandelbrotState.CACHED_TILE_RENDER) openTileStore();
+		model.setRenderMode(renderMode);
+	}
+
+	/**
+	 * Opens the tile store the first time it is needed, so tiles calculated
+	 * in earlier runs are read back from disk. If it cannot be opened, as
+	 * when another window is using it, tiles are only cached in memory.
+	 */
+	private void openTileStore()
+	{
+		if (tileStoreTried) return;
+		tileStoreTried = true;
+		try
+		{
+			MandelbrotState.openTileStore(
+			Paths.get(Config.TILE_STORE_DIRECTORY), Config.TILE_STORE_CAP);
+		}
+		catch (IOException e)
+		{
+			// without a store tiles are still cached in memory
+		}
+	}
+
 	/**
 	 * This method allows a user to change the bounds used to calculate the
 	 * Mandelbrot set.
@@ -325,6 +381,65 @@ public class MandelbrotGuiDelegate implements PropertyChangeListener
 		}
 	}
 
+	/**
+	 * Attempts to export the current view as a PNG image of a size chosen by
+	 * the user, which may be far bigger than the screen.
+	 * The method brings up a JOptionPane asking for the width, height and
+	 * supersampling of the image, then the JFileChooser for the file. The
+	 * image is rendered strip by strip on its own thread, so the GUI can be
+	 * used meanwhile, and the user is told when it is written.
+	 */
+	public void export()
+	{
+		MandelbrotState view = model.getState();
+		// the image defaults to four times the size of the view
+		JTextField widthField = new JTextField("" + 4 * view.getXRes());
+		JTextField heightField = new JTextField("" + 4 * view.getYRes());
+		JTextField factorField = new JTextField("" + 1);
+		Object[] fields =
+		{
+			"Width (pixels): ", widthField,
+			"Height (pixels): ", heightField,
+			"Supersampling (1 for none): ", factorField
+		};
+		int option = JOptionPane.showConfirmDialog(null, fields,
+		"Export image", JOptionPane.OK_CANCEL_OPTION);
+		if (option != JOptionPane.OK_OPTION) return;
+		int width, height, factor;
+		try
+		{
+			width = Integer.parseInt(widthField.getText());
+			height = Integer.parseInt(heightField.getText());
+			factor = Integer.parseInt(factorField.getText());
+		}
+		catch (NumberFormatException e)
+		{
+			JOptionPane.showMessageDialog(null, "Please enter valid integers");
+			return;
+		}
+		File file = getFile("Export Image");
+		if (file == null) return;
+		int color = colorOption;
+		Thread exporter = new Thread(() ->
+		{
+			String message = "Exported " + file.getName();
+			try
+			{
+				ImageExporter.export(view, width, height, color, factor,
+				file.toPath());
+			}
+			catch (Exception e)
+			{
+				message = "Oops.. " + e.getMessage();
+			}
+			String result = message;
+			SwingUtilities.invokeLater(() ->
+			JOptionPane.showMessageDialog(mainFrame, result));
+		}, "Mandelbrot export");
+		exporter.setDaemon(true);
+		exporter.start();
+	}
+
 	/**
 	 * Returns the colorOption value.
 	 *
@@ -365,7 +480,7 @@ public class MandelbrotGuiDelegate implements PropertyChangeListener
 		// Enforcing the type of file that can be chosen
 		fc.setFileSelectionMode(JFileChooser.FILES_ONLY);
 		// depending on action required show either save or open dialog
-		if (action.equals("Save File"))
+		if (action.equals("Save File") || action.equals("Export Image"))
 		{
 			fc.showSaveDialog(mainFrame);
 		}
@@ -393,6 +508,8 @@ public class MandelbrotGuiDelegate implements PropertyChangeListener
 		{
 			public void run()
 			{
+				// undoing or redoing may change the render mode
+				menuBar.showRenderMode(getRenderMode());
 				graphicsPanel.repaint();
 			}
 		});
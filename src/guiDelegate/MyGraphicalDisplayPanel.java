@@ -8,6 +8,8 @@ import java.awt.Font;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import javax.swing.JPanel;
 
 import model.MandelbrotSetGenerator;
@@ -59,6 +61,16 @@ MouseMotionListener
 	 */
 	private MandelbrotSetGenerator model;
 
+	/*
+	 * The image the set is colored into and the palette used, both kept from
+	 * one paint to the next so that painting does not allocate unless the
+	 * resolution, iterations or color scheme change.
+	 */
+	private BufferedImage image;
+	private int[] palette;
+	private int paletteIterations;
+	private int paletteOption;
+
 	/**
 	 * Constructor instantiates a JPanel object given a delegate and
 	 * MandelbrotSetGenerator object.
@@ -90,33 +102,44 @@ MouseMotionListener
 	 */
 	public void paint(Graphics g)
 	{
-		// get the Mandelbrot set 2d array
+		// get the Mandelbrot set, which is colored without being copied
 		int[][] set = model.getSet();
+		int width = set[0].length;
+		int height = set.length;
 		// get the maxIterations
 		int maxIterations = model.getState().getMaxIterations();
-		// construct a ColorMixer Object to color the set
-		ColorMixer color = new ColorMixer(maxIterations);
-		// iterate over every pixel
-		for(int j = 0; j < set.length; j++)
+		// look the colors up from a palette made by the ColorMixer
+		if (palette == null || paletteIterations != maxIterations
+		|| paletteOption != delegate.getColorOption())
+		{
+			paletteIterations = maxIterations;
+			paletteOption = delegate.getColorOption();
+			palette = new ColorMixer(maxIterations).getPalette(paletteOption);
+		}
+		if (image == null || image.getWidth() != width
+		|| image.getHeight() != height)
+		{
+			image = new BufferedImage(width, height,
+			BufferedImage.TYPE_INT_RGB);
+		}
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+		.getData();
+		int cap = palette.length - 1;
+		// color every pixel, row by row
+		for (int y = 0; y < height; y++)
 		{
-			for (int i = 0; i < set[j].length; i++)
+			int[] row = set[y];
+			int offset = y * width;
+			for (int x = 0; x < width; x++)
 			{
-				/* if the current pixel has an iteration value equal to max
-				iterations, draw it in black */
-				if (set[i][j] == maxIterations)
-				{
-					g.setColor(Color.BLACK);
-				}
-				/* otherwise color it using the getColor method in the
-				ColorMixer Object */
-				else
-				{
-					g.setColor(new Color(color.getColor(set[i][j],
-					delegate.getColorOption())));
-				}
-				g.drawLine(j, i, j, i);
+				/* pixels with an iteration value of max iterations, or more
+				while a set of higher iterations is still shown, are black,
+				and the palette is never indexed outside its bounds */
+				pixels[offset + x] = palette[Math.max(0, Math.min(row[x],
+				cap))];
 			}
 		}
+		g.drawImage(image, 0, 0, null);
 
 		// Check if magnification estimate was requested
 		if (delegate.getDisplayMagChoice())
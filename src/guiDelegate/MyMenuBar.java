@@ -12,6 +12,8 @@ import javax.swing.ButtonGroup;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.ImageIcon;
 
+import model.MandelbrotState;
+
 /**
  * This is an extended JMenuBar class which implements the ActionListener
  * interface.
@@ -39,6 +41,9 @@ public class MyMenuBar extends JMenuBar implements ActionListener
 	private JMenuItem iterationsMenuItem;
 	private JMenuItem boundsMenuItem;
 	private JMenuItem magViewToggleMenuItem;
+	private JRadioButtonMenuItem bruteForceMenuItem;
+	private JRadioButtonMenuItem subdivisionMenuItem;
+	private JRadioButtonMenuItem cachedTilesMenuItem;
 
 	/**
 	 * Instantiates a JMenuBar object and populates the menu bar with the
@@ -131,9 +136,39 @@ public class MyMenuBar extends JMenuBar implements ActionListener
 		magViewToggleMenuItem = new JMenuItem("Show/Hide Magnification",
 		new ImageIcon("../icons/mag.png"));
 		addMenuItem(viewMenu, magViewToggleMenuItem, KeyEvent.VK_M);
+		viewMenu.addSeparator();
+		// one render mode is chosen at a time
+		JMenu renderMenu = new JMenu("Render Mode");
+		ButtonGroup renderModes = new ButtonGroup();
+		bruteForceMenuItem = new JRadioButtonMenuItem("Brute Force");
+		addRadioMenuItem(renderMenu, renderModes, bruteForceMenuItem);
+		subdivisionMenuItem = new JRadioButtonMenuItem("Subdivision");
+		addRadioMenuItem(renderMenu, renderModes, subdivisionMenuItem);
+		cachedTilesMenuItem = new JRadioButtonMenuItem("Cached Tiles");
+		addRadioMenuItem(renderMenu, renderModes, cachedTilesMenuItem);
+		showRenderMode(delegate.getRenderMode());
+		viewMenu.add(renderMenu);
 		this.add(viewMenu);
 	}
 
+	/**
+	 * Selects the render mode menu item matching a render mode.
+	 *
+	 * @param renderMode one of the render modes defined in MandelbrotState
+	 */
+	public void showRenderMode(int renderMode)
+	{
+		if (renderMode == MandelbrotState.SUBDIVISION_RENDER)
+		{
+			subdivisionMenuItem.setSelected(true);
+		}
+		else if (renderMode == MandelbrotState.CACHED_TILE_RENDER)
+		{
+			cachedTilesMenuItem.setSelected(true);
+		}
+		else bruteForceMenuItem.setSelected(true);
+	}
+
 	/**
 	 * Helper method used to set an accelerator for a JMenuItem, then registers
 	 * it to the ActionListener before adding it to menu.
@@ -151,6 +186,22 @@ public class MyMenuBar extends JMenuBar implements ActionListener
 		menu.add(item);
 	}
 
+	/**
+	 * Helper method used to add a JRadioButtonMenuItem to a menu and to its
+	 * ButtonGroup, then register it to the ActionListener.
+	 *
+	 * @param menu the menu the item will be added to.
+	 * @param group the ButtonGroup of the item.
+	 * @param item the JRadioButtonMenuItem to add.
+	 */
+	private void addRadioMenuItem(JMenu menu, ButtonGroup group,
+	JRadioButtonMenuItem item)
+	{
+		group.add(item);
+		item.addActionListener(this);
+		menu.add(item);
+	}
+
 	/**
 	 * Method used to listen for clicks on the buttons registered on this
 	 * menubar.
@@ -173,5 +224,17 @@ public class MyMenuBar extends JMenuBar implements ActionListener
 		{
 			delegate.setDisplayMagChoice(!delegate.getDisplayMagChoice());
 		}
+		else if (item == bruteForceMenuItem)
+		{
+			delegate.changeRenderMode(MandelbrotState.BRUTE_FORCE_RENDER);
+		}
+		else if (item == subdivisionMenuItem)
+		{
+			delegate.changeRenderMode(MandelbrotState.SUBDIVISION_RENDER);
+		}
+		else if (item == cachedTilesMenuItem)
+		{
+			delegate.changeRenderMode(MandelbrotState.CACHED_TILE_RENDER);
+		}
 	}
 }
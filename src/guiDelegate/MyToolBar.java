@@ -27,6 +27,7 @@ public class MyToolBar extends JToolBar implements ActionListener
 
 	private JButton openBtn;
 	private JButton saveBtn;
+	private JButton exportBtn;
 	private JButton undoBtn;
 	private JButton redoBtn;
 	private JButton resetBtn;
@@ -53,6 +54,8 @@ public class MyToolBar extends JToolBar implements ActionListener
 		addButton(openBtn, "open");
 		saveBtn = new JButton(new ImageIcon("../icons/save.png"));
 		addButton(saveBtn, "save");
+		exportBtn = new JButton(new ImageIcon("../icons/export.png"));
+		addButton(exportBtn, "export image");
 		addSeparator();
 		undoBtn = new JButton(new ImageIcon("../icons/undo.png"));
 		addButton(undoBtn, "undo");
@@ -103,6 +106,7 @@ public class MyToolBar extends JToolBar implements ActionListener
 		JButton btn = (JButton) e.getSource();
 		if (btn == openBtn) delegate.open();
 		else if (btn == saveBtn) delegate.save();
+		else if (btn == exportBtn) delegate.export();
 		else if (btn == undoBtn) delegate.undo();
 		else if (btn == redoBtn) delegate.redo();
 		else if (btn == resetBtn) delegate.reset();
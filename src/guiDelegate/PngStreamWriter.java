@@ -0,0 +1,199 @@
+package guiDelegate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class writes a PNG image to a channel a few rows at a time, so that
+ * images far bigger than memory can be written as they are rendered.
+ *
+ * The image is 8 bit RGB. Each row is given the Sub filter, which suits the
+ * smooth color bands of the Mandelbrot Set, and the rows are compressed as
+ * they arrive and written out in IDAT chunks of about CHUNK_SIZE bytes. Only
+ * one chunk and one row are held in memory at a time.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+public class PngStreamWriter implements Closeable
+{
+	/**
+	 * The bytes every PNG file starts with.
+	 */
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r',
+	'\n', 0x1a, '\n'};
+
+	/**
+	 * The size of the compressed data written in each IDAT chunk.
+	 */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final int FILTER_SUB = 1;
+
+	private final WritableByteChannel channel;
+	private final int width;
+	private final int height;
+	private final Deflater deflater;
+
+	/**
+	 * A filtered row, and the compressed data not yet written.
+	 */
+	private final byte[] row;
+	private final byte[] chunk;
+	private int chunkLength;
+
+	/**
+	 * The number of rows written so far.
+	 */
+	private int rows;
+
+	/**
+	 * Constructs a PngStreamWriter, writing the start of the image.
+	 *
+	 * @param channel the channel to write the image to, which is not closed
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @throws IllegalArgumentException if width or height is not positive or
+	 * the rows would be too long
+	 * @throws IOException if the channel cannot be written
+	 */
+	public PngStreamWriter(WritableByteChannel channel, int width, int height)
+	throws IllegalArgumentException, IOException
+	{
+		if (width <= 0 || height <= 0 || width > (Integer.MAX_VALUE - 1) / 3)
+		{
+			throw new IllegalArgumentException("Invalid image size " + width
+			+ "x" + height);
+		}
+		this.channel = channel;
+		this.width = width;
+		this.height = height;
+		deflater = new Deflater();
+		row = new byte[1 + 3 * width];
+		chunk = new byte[CHUNK_SIZE];
+		writeFully(ByteBuffer.wrap(SIGNATURE));
+		ByteBuffer header = ByteBuffer.allocate(13);
+		header.putInt(width).putInt(height);
+		// 8 bits per sample, truecolor, deflate, adaptive filtering, no
+		// interlace
+		header.put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0)
+		.put((byte) 0);
+		writeChunk("IHDR", header.array(), 13);
+	}
+
+	/**
+	 * Writes the next rows of the image.
+	 *
+	 * @param pixels the RGB colors of the rows, row after row
+	 * @param count the number of rows given
+	 * @throws IllegalStateException if this would write more rows than the
+	 * height of the image
+	 * @throws IOException if the channel cannot be written
+	 */
+	public void writeRows(int[] pixels, int count)
+	throws IllegalStateException, IOException
+	{
+		if (rows + count > height)
+		{
+			throw new IllegalStateException("More rows than the image height");
+		}
+		for (int r = 0; r < count; r++)
+		{
+			row[0] = FILTER_SUB;
+			int left = 0;
+			for (int x = 0, p = r * width, b = 1; x < width; x++, p++)
+			{
+				int color = pixels[p];
+				// each byte less the same byte of the pixel to its left
+				row[b++] = (byte) ((color >> 16) - (left >> 16));
+				row[b++] = (byte) ((color >> 8) - (left >> 8));
+				row[b++] = (byte) (color - left);
+				left = color;
+			}
+			deflater.setInput(row);
+			while (!deflater.needsInput())
+			{
+				deflate();
+			}
+		}
+		rows += count;
+	}
+
+	/**
+	 * Finishes the image and writes its end. The channel is left open.
+	 *
+	 * @throws IllegalStateException if fewer rows than the height were
+	 * written
+	 * @throws IOException if the channel cannot be written
+	 */
+	@Override
+	public void close() throws IllegalStateException, IOException
+	{
+		try
+		{
+			if (rows != height)
+			{
+				throw new IllegalStateException("Only " + rows + " of "
+				+ height + " rows written");
+			}
+			deflater.finish();
+			while (!deflater.finished())
+			{
+				deflate();
+			}
+			if (chunkLength > 0) writeChunk("IDAT", chunk, chunkLength);
+			writeChunk("IEND", chunk, 0);
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Compresses into the chunk, writing it out when it is full.
+	 */
+	private void deflate() throws IOException
+	{
+		chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE
+		- chunkLength);
+		if (chunkLength == CHUNK_SIZE)
+		{
+			writeChunk("IDAT", chunk, chunkLength);
+			chunkLength = 0;
+		}
+	}
+
+	/**
+	 * Writes a chunk: its length, type, data and the CRC of its type and data.
+	 */
+	private void writeChunk(String type, byte[] data, int length)
+	throws IOException
+	{
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+		ByteBuffer buffer = ByteBuffer.allocate(12 + length);
+		buffer.putInt(length).put(typeBytes).put(data, 0, length)
+		.putInt((int) crc.getValue());
+		buffer.flip();
+		writeFully(buffer);
+	}
+
+	/**
+	 * Writes the whole of a buffer to the channel.
+	 */
+	private void writeFully(ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+	}
+}
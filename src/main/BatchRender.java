@@ -0,0 +1,346 @@
+package main;
+
+import model.MandelbrotState;
+import model.SupersampledSet;
+import guiDelegate.ColorMixer;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+/**
+ * The main class used to render Mandelbrot Sets to PNG files without a GUI,
+ * for example in overnight jobs. It runs with java.awt.headless=true and
+ * never opens a window.
+ *
+ * Usage: java main.BatchRender [-o directory] [-j jobs] [-c color]
+ * [-a factor] file...
+ *
+ * Each file is either a MandelbrotState saved by the GUI, which is rendered
+ * to a PNG named after the file, or a plain text job list. Each line of a
+ * job list that is not blank or a # comment is one job: a name, which the
+ * PNG is named after, followed by settings of the form key=value. The keys
+ * are width, height, minReal, maxReal, minImaginary, maxImaginary,
+ * maxIterations and sqRadius, or centreReal, centreImaginary, realSpan and
+ * imaginarySpan for bounds in arbitrary precision, and color and
+ * supersample to override the options for the job. For example:
+ *
+ * spiral width=1920 height=1080 centreReal=-0.7436 centreImaginary=0.1318
+ * realSpan=0.004 imaginarySpan=0.00225 maxIterations=2000
+ *
+ * The options are the directory to write the PNGs to (the current
+ * directory by default), the number of jobs rendered at once (the number of
+ * processors by default), the ColorMixer scheme to use (0 by default) and
+ * the factor to supersample edge pixels by (1, no supersampling, by
+ * default). The time of each job, and the throughput in images per minute,
+ * are reported as the jobs finish.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+public class BatchRender
+{
+	/**
+	 * The first two bytes of a file written by an ObjectOutputStream.
+	 */
+	private static final int SERIALIZED_MAGIC = 0xaced;
+
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		try
+		{
+			if (run(args, System.out) > 0) System.exit(1);
+		}
+		catch (IllegalArgumentException | IOException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java main.BatchRender [-o directory] "
+			+ "[-j jobs] [-c color] [-a factor] file...");
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Renders the jobs given by command line arguments, reporting progress.
+	 *
+	 * @param args the options and job files, as described for the class
+	 * @param out the stream to report progress and throughput to
+	 * @return the number of jobs which failed
+	 * @throws IllegalArgumentException if the arguments or a job list are
+	 * not valid
+	 * @throws IOException if a job file cannot be read
+	 */
+	public static int run(String[] args, PrintStream out)
+	throws IllegalArgumentException, IOException
+	{
+		Path directory = Paths.get(".");
+		int threads = Runtime.getRuntime().availableProcessors();
+		int color = 0;
+		int factor = 1;
+		List<Job> jobs = new ArrayList<>();
+		for (int a = 0; a < args.length; a++)
+		{
+			String arg = args[a];
+			if (arg.startsWith("-") && a + 1 == args.length)
+			{
+				throw new IllegalArgumentException("Missing value for " + arg);
+			}
+			switch (arg)
+			{
+				case "-o": directory = Paths.get(args[++a]); break;
+				case "-j": threads = positive(arg, args[++a]); break;
+				case "-c": color = Integer.parseInt(args[++a]); break;
+				case "-a": factor = positive(arg, args[++a]); break;
+				default: readJobs(Paths.get(arg), jobs);
+			}
+		}
+		if (jobs.isEmpty()) throw new IllegalArgumentException("No jobs");
+		Files.createDirectories(directory);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		List<Future<String>> results = new ArrayList<>();
+		for (Job job : jobs)
+		{
+			Path file = directory.resolve(job.name + ".png");
+			int jobColor = job.color < 0 ? color : job.color;
+			int jobFactor = job.factor < 1 ? factor : job.factor;
+			results.add(pool.submit(() -> render(job, file, jobColor,
+			jobFactor)));
+		}
+		pool.shutdown();
+		int failures = 0;
+		int done = 0;
+		for (int j = 0; j < results.size(); j++)
+		{
+			try
+			{
+				out.println(results.get(j).get());
+				done++;
+			}
+			catch (ExecutionException e)
+			{
+				out.println(jobs.get(j).name + ": failed, " + e.getCause());
+				failures++;
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				out.println(jobs.get(j).name + ": interrupted");
+				failures++;
+			}
+		}
+		double minutes = (System.nanoTime() - start) / 60e9;
+		out.printf("%d images in %.1f s, %.1f images per minute%n", done,
+		minutes * 60, done / minutes);
+		return failures;
+	}
+
+	/**
+	 * Renders a job to a PNG file.
+	 *
+	 * @return a line reporting the job
+	 * @throws IOException if the file cannot be written
+	 */
+	private static String render(Job job, Path file, int color, int factor)
+	throws IOException
+	{
+		long start = System.nanoTime();
+		MandelbrotState state = job.state;
+		int[][] set = state.getMandelbrotSet();
+		SupersampledSet sampled = state.supersample(set, factor,
+		SupersampledSet.DEFAULT_THRESHOLD);
+		int[] pixels = new ColorMixer(state.getMaxIterations()).getPixels(
+		sampled, color);
+		BufferedImage image = new BufferedImage(state.getXRes(),
+		state.getYRes(), BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, state.getXRes(), state.getYRes(), pixels, 0,
+		state.getXRes());
+		if (!ImageIO.write(image, "png", file.toFile()))
+		{
+			throw new IOException("No PNG writer");
+		}
+		return String.format("%s: %dx%d, %d iterations, %d ms", job.name,
+		state.getXRes(), state.getYRes(), state.getMaxIterations(),
+		(System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Reads the jobs of a file, a saved MandelbrotState or a job list.
+	 */
+	private static void readJobs(Path path, List<Job> jobs)
+	throws IllegalArgumentException, IOException
+	{
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(
+		path)))
+		{
+			in.mark(2);
+			int magic = in.read() << 8 | in.read();
+			in.reset();
+			if (magic == SERIALIZED_MAGIC)
+			{
+				try (ObjectInputStream objects = new ObjectInputStream(in))
+				{
+					String name = path.getFileName().toString().replaceFirst(
+					"\\.[^.]*$", "");
+					jobs.add(new Job(name, (MandelbrotState)
+					objects.readObject(), -1, 0));
+				}
+				catch (ClassNotFoundException | ClassCastException e)
+				{
+					throw new IOException(path + " is not a saved "
+					+ "MandelbrotState");
+				}
+				return;
+			}
+		}
+		int lineNumber = 0;
+		for (String line : Files.readAllLines(path))
+		{
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			try
+			{
+				jobs.add(parseJob(line));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException(path + ":" + lineNumber
+				+ ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Parses a line of a job list.
+	 */
+	private static Job parseJob(String line) throws IllegalArgumentException
+	{
+		String[] words = line.split("\\s+");
+		int width = 800;
+		int height = 800;
+		int color = -1;
+		int factor = 0;
+		// the settings are applied once the resolution is known
+		List<String[]> settings = new ArrayList<>();
+		for (int w = 1; w < words.length; w++)
+		{
+			String[] setting = words[w].split("=", 2);
+			if (setting.length != 2)
+			{
+				throw new IllegalArgumentException("Expected key=value: "
+				+ words[w]);
+			}
+			switch (setting[0])
+			{
+				case "width": width = positive("width", setting[1]); break;
+				case "height": height = positive("height", setting[1]); break;
+				case "color": color = Integer.parseInt(setting[1]); break;
+				case "supersample":
+					factor = positive("supersample", setting[1]);
+					break;
+				default: settings.add(setting);
+			}
+		}
+		MandelbrotState state = new MandelbrotState(width, height);
+		BigDecimal centreReal = state.getCentreReal();
+		BigDecimal centreImaginary = state.getCentreImaginary();
+		BigDecimal realSpan = state.getRealSpan();
+		BigDecimal imaginarySpan = state.getImaginarySpan();
+		boolean precise = false;
+		for (String[] setting : settings)
+		{
+			String value = setting[1];
+			switch (setting[0])
+			{
+				case "minReal": state.setMinReal(Double.parseDouble(value));
+					break;
+				case "maxReal": state.setMaxReal(Double.parseDouble(value));
+					break;
+				case "minImaginary":
+					state.setMinimaginary(Double.parseDouble(value));
+					break;
+				case "maxImaginary":
+					state.setMaximaginary(Double.parseDouble(value));
+					break;
+				case "maxIterations":
+					state.setMaxIterations(positive("maxIterations", value));
+					break;
+				case "sqRadius":
+					state.setSqRadius(Double.parseDouble(value));
+					break;
+				case "centreReal": centreReal = new BigDecimal(value);
+					precise = true;
+					break;
+				case "centreImaginary": centreImaginary = new BigDecimal(value);
+					precise = true;
+					break;
+				case "realSpan": realSpan = new BigDecimal(value);
+					precise = true;
+					break;
+				case "imaginarySpan": imaginarySpan = new BigDecimal(value);
+					precise = true;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown setting: "
+					+ setting[0]);
+			}
+		}
+		if (precise)
+		{
+			state.setPreciseBounds(centreReal, centreImaginary, realSpan,
+			imaginarySpan);
+		}
+		return new Job(words[0], state, color, factor);
+	}
+
+	/**
+	 * Parses a number which must be positive.
+	 */
+	private static int positive(String name, String value)
+	throws IllegalArgumentException
+	{
+		int number = Integer.parseInt(value);
+		if (number <= 0)
+		{
+			throw new IllegalArgumentException(name + " must be positive");
+		}
+		return number;
+	}
+
+	/**
+	 * A render job: the name of its PNG, its state, and its color scheme and
+	 * supersampling factor, or -1 and 0 to use the options.
+	 */
+	private static final class Job
+	{
+		private final String name;
+		private final MandelbrotState state;
+		private final int color;
+		private final int factor;
+
+		Job(String name, MandelbrotState state, int color, int factor)
+		{
+			this.name = name;
+			this.state = state;
+			this.color = color;
+			this.factor = factor;
+		}
+	}
+}
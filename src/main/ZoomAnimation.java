@@ -0,0 +1,320 @@
+package main;
+
+import model.MandelbrotState;
+import model.ZoomPath;
+import guiDelegate.ColorMixer;
+import guiDelegate.PngStreamWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The main class used to render the frames of a zoom animation to numbered
+ * PNG files without a GUI, to be put together into a video.
+ *
+ * Usage: java main.ZoomAnimation [-o directory] [-j jobs] [-c color]
+ * [-f frames] [-s widthxheight] keyframe...
+ *
+ * Each keyframe is a MandelbrotState saved by the GUI, and at least two are
+ * needed. The frames follow the ZoomPath through the keyframes, and are
+ * written as frame00000.png, frame00001.png and so on.
+ *
+ * The options are the directory to write the frames to (the current
+ * directory by default), the number of frames rendered at once (the number
+ * of processors by default), the ColorMixer scheme to use (0 by default),
+ * the number of frames from one keyframe to the next (60 by default) and
+ * the size of the frames (the resolution of the first keyframe by default).
+ *
+ * Key frames, about one for every doubling of the zoom, are rendered from
+ * the key frame deeper than them, and the frames between from the deeper of
+ * their key frames, so only the border outside the deeper frame is
+ * calculated. The frames between two key frames are rendered in parallel.
+ * The time of each frame, and the throughput in frames per minute, are
+ * reported as the frames finish.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+public class ZoomAnimation
+{
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		try
+		{
+			if (run(args, System.out) > 0) System.exit(1);
+		}
+		catch (IllegalArgumentException | IOException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java main.ZoomAnimation [-o directory] "
+			+ "[-j jobs] [-c color] [-f frames] [-s widthxheight] "
+			+ "keyframe...");
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Renders the animation given by command line arguments, reporting
+	 * progress.
+	 *
+	 * @param args the options and keyframe files, as described for the class
+	 * @param out the stream to report progress and throughput to
+	 * @return the number of frames which failed
+	 * @throws IllegalArgumentException if the arguments are not valid
+	 * @throws IOException if a keyframe cannot be read
+	 */
+	public static int run(String[] args, PrintStream out)
+	throws IllegalArgumentException, IOException
+	{
+		Path directory = Paths.get(".");
+		int threads = Runtime.getRuntime().availableProcessors();
+		int color = 0;
+		int framesPerSegment = 60;
+		int width = 0;
+		int height = 0;
+		List<MandelbrotState> keyframes = new ArrayList<>();
+		for (int a = 0; a < args.length; a++)
+		{
+			String arg = args[a];
+			if (arg.startsWith("-") && a + 1 == args.length)
+			{
+				throw new IllegalArgumentException("Missing value for " + arg);
+			}
+			switch (arg)
+			{
+				case "-o": directory = Paths.get(args[++a]); break;
+				case "-j": threads = positive(arg, args[++a]); break;
+				case "-c": color = Integer.parseInt(args[++a]); break;
+				case "-f": framesPerSegment = positive(arg, args[++a]); break;
+				case "-s":
+					String[] size = args[++a].split("x", 2);
+					if (size.length != 2)
+					{
+						throw new IllegalArgumentException("Expected "
+						+ "widthxheight: " + args[a]);
+					}
+					width = positive("width", size[0]);
+					height = positive("height", size[1]);
+					break;
+				default: keyframes.add(readKeyframe(Paths.get(arg)));
+			}
+		}
+		if (keyframes.size() < 2)
+		{
+			throw new IllegalArgumentException("At least two keyframes needed");
+		}
+		if (width == 0)
+		{
+			width = keyframes.get(0).getXRes();
+			height = keyframes.get(0).getYRes();
+		}
+		Files.createDirectories(directory);
+		return render(new ZoomPath(keyframes, framesPerSegment, width, height),
+		directory, threads, color, out);
+	}
+
+	/**
+	 * Renders the frames of a zoom path to numbered PNG files, reporting
+	 * progress.
+	 *
+	 * @param path the frames to render
+	 * @param directory the directory to write the frames to
+	 * @param threads the number of frames rendered at once
+	 * @param color the ColorMixer scheme to color the frames with
+	 * @param out the stream to report progress and throughput to
+	 * @return the number of frames which failed
+	 */
+	public static int render(ZoomPath path, Path directory, int threads,
+	int color, PrintStream out)
+	{
+		int count = path.getFrameCount();
+		int[] users = new int[count];
+		for (int f = 0; f < count; f++)
+		{
+			if (path.getReference(f) >= 0) users[path.getReference(f)]++;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		List<CompletableFuture<Frame>> frames = new ArrayList<>();
+		for (int f = 0; f < count; f++)
+		{
+			frames.add(null);
+		}
+		for (int f = 0; f < count; f++)
+		{
+			schedule(f, path, directory, color, users, frames, pool);
+		}
+		int failures = 0;
+		int done = 0;
+		int reused = 0;
+		for (int f = 0; f < count; f++)
+		{
+			try
+			{
+				Frame frame = frames.get(f).join();
+				out.println(frame.report);
+				done++;
+				if (frame.reference >= 0) reused++;
+			}
+			catch (CompletionException e)
+			{
+				out.println(frameName(f) + ": failed, " + e.getCause());
+				failures++;
+			}
+			// a finished frame is only held on to while frames use its set
+			frames.set(f, null);
+		}
+		pool.shutdown();
+		double minutes = (System.nanoTime() - start) / 60e9;
+		out.printf("%d frames in %.1f s, %.1f frames per minute, %d rendered "
+		+ "from a deeper frame%n", done, minutes * 60, done / minutes, reused);
+		return failures;
+	}
+
+	/**
+	 * Schedules a frame to render once the frame it is rendered from, if
+	 * any, has rendered. Frames are scheduled deepest first along each chain
+	 * of references.
+	 */
+	private static CompletableFuture<Frame> schedule(int f, ZoomPath path,
+	Path directory, int color, int[] users,
+	List<CompletableFuture<Frame>> frames, ExecutorService pool)
+	{
+		CompletableFuture<Frame> frame = frames.get(f);
+		if (frame != null) return frame;
+		int reference = path.getReference(f);
+		if (reference < 0)
+		{
+			frame = CompletableFuture.supplyAsync(() -> render(f, path,
+			directory, color, users[f], null), pool);
+		}
+		else
+		{
+			// a frame whose reference failed is rendered in full
+			frame = schedule(reference, path, directory, color, users, frames,
+			pool).handleAsync((from, failure) -> render(f, path, directory,
+			color, users[f], from), pool);
+		}
+		frames.set(f, frame);
+		return frame;
+	}
+
+	/**
+	 * Renders a frame, from a deeper frame if one is given, and writes it.
+	 *
+	 * @throws CompletionException if the frame cannot be written
+	 */
+	private static Frame render(int f, ZoomPath path, Path directory,
+	int color, int users, Frame from) throws CompletionException
+	{
+		long start = System.nanoTime();
+		MandelbrotState state = path.getFrame(f);
+		int[][] fromSet = from == null ? null : from.take();
+		int[][] set = fromSet == null ? state.getMandelbrotSet()
+		: state.getMandelbrotSetAround(path.getFrame(path.getReference(f)),
+		fromSet);
+		int[] pixels = new ColorMixer(state.getMaxIterations()).getPixels(
+		state.supersample(set, 1, 0), color);
+		String name = frameName(f);
+		try (FileChannel channel = FileChannel.open(directory.resolve(name),
+		StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		StandardOpenOption.TRUNCATE_EXISTING);
+		PngStreamWriter writer = new PngStreamWriter(channel,
+		state.getXRes(), state.getYRes()))
+		{
+			writer.writeRows(pixels, state.getYRes());
+		}
+		catch (IOException e)
+		{
+			throw new CompletionException(e);
+		}
+		int reference = fromSet == null ? -1 : path.getReference(f);
+		String report = String.format("%s: %d iterations, %s, %d ms", name,
+		state.getMaxIterations(), reference < 0 ? "in full" : "from "
+		+ frameName(reference), (System.nanoTime() - start) / 1000000);
+		return new Frame(report, reference, users > 0 ? set : null, users);
+	}
+
+	/**
+	 * Returns the file name of a frame.
+	 */
+	private static String frameName(int f)
+	{
+		return String.format("frame%05d.png", f);
+	}
+
+	/**
+	 * Reads a keyframe saved by the GUI.
+	 */
+	private static MandelbrotState readKeyframe(Path path) throws IOException
+	{
+		try (InputStream in = Files.newInputStream(path);
+		ObjectInputStream objects = new ObjectInputStream(in))
+		{
+			return (MandelbrotState) objects.readObject();
+		}
+		catch (ClassNotFoundException | ClassCastException e)
+		{
+			throw new IOException(path + " is not a saved MandelbrotState");
+		}
+	}
+
+	/**
+	 * Parses a number which must be positive.
+	 */
+	private static int positive(String name, String value)
+	throws IllegalArgumentException
+	{
+		int number = Integer.parseInt(value);
+		if (number <= 0)
+		{
+			throw new IllegalArgumentException(name + " must be positive");
+		}
+		return number;
+	}
+
+	/**
+	 * A rendered frame: its report, the frame it was rendered from or -1,
+	 * and its set while frames still to render are to use it.
+	 */
+	private static final class Frame
+	{
+		private final String report;
+		private final int reference;
+		private int[][] set;
+		private int users;
+
+		Frame(String report, int reference, int[][] set, int users)
+		{
+			this.report = report;
+			this.reference = reference;
+			this.set = set;
+			this.users = users;
+		}
+
+		/**
+		 * Returns the set for one of the frames using it, letting it go once
+		 * the last has taken it.
+		 */
+		synchronized int[][] take()
+		{
+			int[][] taken = set;
+			if (--users <= 0) set = null;
+			return taken;
+		}
+	}
+}
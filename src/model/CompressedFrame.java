@@ -0,0 +1,241 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * This class holds a rendered Mandelbrot Set compactly, for keeping many
+ * views in memory at once.
+ *
+ * Every iteration value is stored in just as many bits as the biggest value
+ * of the set needs, so a set of at most 255 iterations takes a byte a pixel
+ * rather than four. Each row is cut into runs and literals: a span of at
+ * least MIN_RUN equal values, such as the inside of the set, is stored once
+ * with its length, and the values between such spans are stored one after
+ * another. Where each row starts is kept, so that any row can be decoded
+ * without the rows before it.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class CompressedFrame
+{
+	/**
+	 * The shortest span of equal values stored as a run.
+	 */
+	private static final int MIN_RUN = 4;
+
+	/**
+	 * The number of bytes taken by an object or array besides its contents,
+	 * roughly.
+	 */
+	private static final int OVERHEAD = 16;
+
+	private final int width;
+	private final int height;
+
+	/**
+	 * The number of bits of each iteration value, and of each run or literal
+	 * length.
+	 */
+	private final int valueBits;
+	private final int lengthBits;
+
+	/**
+	 * The encoded rows, and the bit at which each row starts.
+	 */
+	private final long[] bits;
+	private final long[] rowStarts;
+
+	/**
+	 * Constructs a CompressedFrame holding a set.
+	 *
+	 * @param set the set to hold, [height][width]
+	 */
+	CompressedFrame(int[][] set)
+	{
+		height = set.length;
+		width = set[0].length;
+		int biggest = 0;
+		for (int[] row : set)
+		{
+			for (int value : row)
+			{
+				biggest = Math.max(biggest, value);
+			}
+		}
+		valueBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(biggest));
+		lengthBits = 32 - Integer.numberOfLeadingZeros(width);
+		rowStarts = new long[height];
+		Writer writer = new Writer(width * height * valueBits / 64 + 1);
+		for (int y = 0; y < height; y++)
+		{
+			rowStarts[y] = writer.position;
+			encodeRow(set[y], writer);
+		}
+		bits = writer.toArray();
+	}
+
+	/**
+	 * Encodes a row as runs and literals, each starting with a bit telling
+	 * which it is and its length.
+	 */
+	private void encodeRow(int[] row, Writer writer)
+	{
+		int literalStart = 0;
+		int x = 0;
+		while (x < width)
+		{
+			int runEnd = x + 1;
+			while (runEnd < width && row[runEnd] == row[x])
+			{
+				runEnd++;
+			}
+			if (runEnd - x >= MIN_RUN)
+			{
+				writeLiterals(row, literalStart, x, writer);
+				writer.write(1, 1);
+				writer.write(runEnd - x, lengthBits);
+				writer.write(row[x], valueBits);
+				literalStart = runEnd;
+			}
+			x = runEnd;
+		}
+		writeLiterals(row, literalStart, width, writer);
+	}
+
+	/**
+	 * Writes the values of a row from start to end, if any, as a literal.
+	 */
+	private void writeLiterals(int[] row, int start, int end, Writer writer)
+	{
+		if (start == end) return;
+		writer.write(0, 1);
+		writer.write(end - start, lengthBits);
+		for (int x = start; x < end; x++)
+		{
+			writer.write(row[x], valueBits);
+		}
+	}
+
+	/**
+	 * Returns the number of pixels on the x-axis.
+	 *
+	 * @return the width
+	 */
+	int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Returns the number of pixels on the y-axis.
+	 *
+	 * @return the height
+	 */
+	int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Decodes one row.
+	 *
+	 * @param y the row to decode
+	 * @param row the array to decode the width values into
+	 */
+	void decodeRow(int y, int[] row)
+	{
+		long position = rowStarts[y];
+		int x = 0;
+		while (x < width)
+		{
+			boolean run = read(position, 1) == 1;
+			int length = (int) read(position + 1, lengthBits);
+			position += 1 + lengthBits;
+			if (run)
+			{
+				Arrays.fill(row, x, x + length, (int) read(position,
+				valueBits));
+				position += valueBits;
+				x += length;
+			}
+			else
+			{
+				for (int end = x + length; x < end; x++)
+				{
+					row[x] = (int) read(position, valueBits);
+					position += valueBits;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes the whole set.
+	 *
+	 * @return the set, [height][width]
+	 */
+	int[][] decode()
+	{
+		int[][] set = new int[height][width];
+		for (int y = 0; y < height; y++)
+		{
+			decodeRow(y, set[y]);
+		}
+		return set;
+	}
+
+	/**
+	 * Returns roughly how many bytes the frame takes.
+	 *
+	 * @return the size in bytes
+	 */
+	long getSize()
+	{
+		return 3 * OVERHEAD + 8L * bits.length + 8L * rowStarts.length;
+	}
+
+	/**
+	 * Reads count bits, at most 32, from a position.
+	 */
+	private long read(long position, int count)
+	{
+		int word = (int) (position >>> 6);
+		int offset = (int) (position & 63);
+		long value = bits[word] >>> offset;
+		if (offset + count > 64) value |= bits[word + 1] << (64 - offset);
+		return value & ((1L << count) - 1);
+	}
+
+	/**
+	 * Appends values of a given number of bits to a growing array of longs.
+	 */
+	private static final class Writer
+	{
+		private long[] words;
+		private long position;
+
+		Writer(int capacity)
+		{
+			words = new long[Math.max(1, capacity)];
+		}
+
+		void write(long value, int count)
+		{
+			int word = (int) (position >>> 6);
+			int offset = (int) (position & 63);
+			if (word + 1 >= words.length)
+			{
+				words = Arrays.copyOf(words, words.length * 2 + 2);
+			}
+			words[word] |= value << offset;
+			if (offset + count > 64) words[word + 1] |= value >>> (64 - offset);
+			position += count;
+		}
+
+		long[] toArray()
+		{
+			return Arrays.copyOf(words, (int) ((position + 63) >>> 6) + 1);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package model;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class calculates the Mandelbrot Set of views slightly too deep for
+ * doubles using double-double arithmetic.
+ *
+ * A double-double holds a number as the unevaluated sum hi + lo of two
+ * doubles, where lo is smaller than half an ulp of hi, giving about 106 bits
+ * of precision. The sums and products are exact thanks to the two-sum trick
+ * and Math.fma, and are written out with local variables in calcPixel so the
+ * kernel creates no objects while iterating.
+ *
+ * This is cheaper than perturbation for views between MandelbrotState
+ * DEEP_ZOOM_SPACING and PERTURBATION_SPACING, where a reference orbit
+ * would cost more than it saves.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class DoubleDoubleCalculator
+{
+	/**
+	 * The number of rows calculated by one task.
+	 */
+	private static final int ROWS_PER_TASK = 8;
+
+	private final MandelbrotCalculator settings;
+	private final int xRes;
+	private final int yRes;
+	private final int maxIterations;
+	private final double sqRadius;
+	private final double realStep;
+	private final double imaginaryStep;
+
+	/**
+	 * The centre of the view as double-doubles.
+	 */
+	private final double centreRealHi;
+	private final double centreRealLo;
+	private final double centreImaginaryHi;
+	private final double centreImaginaryLo;
+
+	/**
+	 * Constructs a DoubleDoubleCalculator for the view of a MandelbrotState.
+	 *
+	 * @param state the view to calculate
+	 */
+	DoubleDoubleCalculator(MandelbrotState state)
+	{
+		settings = state;
+		xRes = state.getXRes();
+		yRes = state.getYRes();
+		maxIterations = state.getMaxIterations();
+		sqRadius = state.getSqRadius();
+		realStep = state.getRealSpan().doubleValue() / xRes;
+		imaginaryStep = state.getImaginarySpan().doubleValue() / yRes;
+		BigDecimal centreReal = state.getCentreReal();
+		BigDecimal centreImaginary = state.getCentreImaginary();
+		centreRealHi = centreReal.doubleValue();
+		centreRealLo = centreReal.subtract(new BigDecimal(centreRealHi))
+		.doubleValue();
+		centreImaginaryHi = centreImaginary.doubleValue();
+		centreImaginaryLo = centreImaginary.subtract(
+		new BigDecimal(centreImaginaryHi)).doubleValue();
+	}
+
+	/**
+	 * Calculates the Mandelbrot Set of the view.
+	 *
+	 * @return the 2d array [yRes][xRes] of iteration values
+	 */
+	int[][] calcMandelbrotSet()
+	{
+		int[][] set = new int[yRes][xRes];
+		RowTask task = new RowTask(set, 0, yRes);
+		ForkJoinPool pool = settings.getRenderPool();
+		if (pool.getParallelism() > 1)
+		{
+			pool.invoke(task);
+		}
+		else
+		{
+			task.compute();
+		}
+		return set;
+	}
+
+	/**
+	 * Calculates the number of iterations for the point centre + (dcr, dci)
+	 * to escape, iterating Z in double-double precision.
+	 *
+	 * @param dcr the real offset of C from the centre of the view
+	 * @param dci the imaginary offset of C from the centre of the view
+	 * @return the number of iterations until Z escaped the radius, or
+	 * maxIterations otherwise
+	 */
+	private int calcPixel(double dcr, double dci)
+	{
+		// C = centre + offset, as a double-double
+		double s = centreRealHi + dcr;
+		double v = s - centreRealHi;
+		double t = (centreRealHi - (s - v)) + (dcr - v) + centreRealLo;
+		double crHi = s + t;
+		double crLo = t - (crHi - s);
+		s = centreImaginaryHi + dci;
+		v = s - centreImaginaryHi;
+		t = (centreImaginaryHi - (s - v)) + (dci - v) + centreImaginaryLo;
+		double ciHi = s + t;
+		double ciLo = t - (ciHi - s);
+
+		if (maxIterations > 0 && settings.isInterior(crHi, ciHi, sqRadius))
+		{
+			return maxIterations;
+		}
+		boolean periodicityCheck = settings.getPeriodicityCheck();
+		double zrHi = 0, zrLo = 0, ziHi = 0, ziLo = 0;
+		double savedHi = 0, savedLo = 0, savedImHi = 0, savedImLo = 0;
+		int checkLength = 1;
+		int checkCount = 0;
+		for (int iterations = 0; iterations < maxIterations; iterations++)
+		{
+			// zr^2
+			double p = zrHi * zrHi;
+			double e = Math.fma(zrHi, zrHi, -p) + 2 * zrHi * zrLo;
+			double zr2Hi = p + e;
+			double zr2Lo = e - (zr2Hi - p);
+			// zi^2
+			p = ziHi * ziHi;
+			e = Math.fma(ziHi, ziHi, -p) + 2 * ziHi * ziLo;
+			double zi2Hi = p + e;
+			double zi2Lo = e - (zi2Hi - p);
+			if ((zr2Hi + zi2Hi) > sqRadius)
+			{
+				return iterations + 1;
+			}
+			// 2 * zr * zi, doubling is exact
+			p = zrHi * ziHi;
+			e = Math.fma(zrHi, ziHi, -p) + (zrHi * ziLo + zrLo * ziHi);
+			double mHi = p + e;
+			double mLo = e - (mHi - p);
+			mHi *= 2;
+			mLo *= 2;
+			// zi = 2 * zr * zi + ci
+			s = mHi + ciHi;
+			v = s - mHi;
+			t = (mHi - (s - v)) + (ciHi - v) + mLo + ciLo;
+			double nziHi = s + t;
+			double nziLo = t - (nziHi - s);
+			// zr = zr^2 - zi^2 + cr
+			s = zr2Hi - zi2Hi;
+			v = s - zr2Hi;
+			t = (zr2Hi - (s - v)) + (-zi2Hi - v) + zr2Lo - zi2Lo;
+			double dHi = s + t;
+			double dLo = t - (dHi - s);
+			s = dHi + crHi;
+			v = s - dHi;
+			t = (dHi - (s - v)) + (crHi - v) + dLo + crLo;
+			zrHi = s + t;
+			zrLo = t - (zrHi - s);
+			ziHi = nziHi;
+			ziLo = nziLo;
+			if (periodicityCheck)
+			{
+				// as in MandelbrotCalculator, a repeated Z never escapes
+				if (zrHi == savedHi && zrLo == savedLo && ziHi == savedImHi
+				&& ziLo == savedImLo)
+				{
+					return maxIterations;
+				}
+				if (++checkCount == checkLength)
+				{
+					checkCount = 0;
+					checkLength *= 2;
+					savedHi = zrHi;
+					savedLo = zrLo;
+					savedImHi = ziHi;
+					savedImLo = ziLo;
+				}
+			}
+		}
+		return Math.max(maxIterations, 0);
+	}
+
+	/**
+	 * A fork-join task which calculates a range of rows.
+	 */
+	private class RowTask extends RecursiveAction
+	{
+		private final int[][] set;
+		private final int y0;
+		private final int y1;
+
+		RowTask(int[][] set, int y0, int y1)
+		{
+			this.set = set;
+			this.y0 = y0;
+			this.y1 = y1;
+		}
+
+		@Override
+		protected void compute()
+		{
+			// rows are only split when running on the render pool
+			if (y1 - y0 > ROWS_PER_TASK && inForkJoinPool())
+			{
+				int mid = (y0 + y1) / 2;
+				invokeAll(new RowTask(set, y0, mid), new RowTask(set, mid, y1));
+				return;
+			}
+			for (int j = y0; j < y1; j++)
+			{
+				settings.checkCancelled();
+				double dci = (j - yRes / 2.0) * imaginaryStep;
+				int[] row = set[j];
+				for (int i = 0; i < xRes; i++)
+				{
+					row[i] = calcPixel((i - xRes / 2.0) * realStep, dci);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,637 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * This class renders the Mandelbrot Set of a new MandelbrotState by reusing
+ * the set already rendered for a previous state, where the two views share
+ * pixels.
+ *
+ * Each method returns null when the states are not related in the way it
+ * handles, in which case the new set has to be rendered in full.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class IncrementalRenderer
+{
+	/**
+	 * How much wider, as a fraction, the pixels of a view may be than those
+	 * of another for them to count as no wider.
+	 */
+	private static final double GRID_TOLERANCE = 1e-6;
+
+	/**
+	 * The smallest fraction of a new set which must line up with the
+	 * previous set for reuseAligned to calculate the rest region by region,
+	 * rather than leave it to a full render.
+	 */
+	private static final double MIN_REUSE = 0.25;
+
+	/**
+	 * One half, for finding the lower bounds of views from their centres.
+	 */
+	private static final BigDecimal HALF = new BigDecimal("0.5");
+
+	/**
+	 * Renders the set of a view that is the previous view moved by a whole
+	 * number of pixels, as when panning. Pixels at exactly the point of a
+	 * previous pixel are copied across and the others, mostly the newly
+	 * exposed strips, are calculated. The points are worked out from the
+	 * double bounds of both views as MandelbrotCalculator works them out, so
+	 * the set is identical to a full render of the new view. Every shared
+	 * pixel is copied when both views were snapped onto the same grid by
+	 * MandelbrotState.snapBounds.
+	 *
+	 * @param from the state of the previous set
+	 * @param fromSet the previous set
+	 * @param to the state to render
+	 * @return the set of to, or null if to does not share the resolution,
+	 * pixel spacing, iterations, radius and precision of from, or no pixel
+	 * with it
+	 */
+	static int[][] pan(MandelbrotState from, int[][] fromSet,
+	MandelbrotState to)
+	{
+		if (!sameSettings(from, to) || !samePrecision(from, to)
+		|| !sameStep(from.getMinReal(), from.getMaxReal(), to.getMinReal(),
+		to.getMaxReal()) || !sameStep(from.getMinimaginary(),
+		from.getMaximaginary(), to.getMinimaginary(), to.getMaximaginary()))
+		{
+			return null;
+		}
+		int[] columns = samePointPixels(from.getMinReal(), from.getMaxReal(),
+		from.getXRes(), to.getMinReal(), to.getMaxReal(), to.getXRes());
+		int[] rows = samePointPixels(from.getMinimaginary(),
+		from.getMaximaginary(), from.getYRes(), to.getMinimaginary(),
+		to.getMaximaginary(), to.getYRes());
+		if (countAligned(columns) == 0 || countAligned(rows) == 0) return null;
+		return copySamePoints(fromSet, to, columns, rows);
+	}
+
+	/**
+	 * Renders the set of a view whose pixel grid partly lines up with the
+	 * pixel grid of the previous view, as when zooming out by a whole factor
+	 * or going back to a view the previous one was zoomed in from. Pixels
+	 * at exactly the point of a previous pixel are copied and the others
+	 * calculated, so a zoom out only calculates the newly visible border and
+	 * the set is identical to a full render of the new view.
+	 *
+	 * @param from the state of the previous set
+	 * @param fromSet the previous set
+	 * @param to the state to render
+	 * @return the set of to, or null if less than MIN_REUSE of it lines up
+	 * with from, or they differ in iterations or radius
+	 */
+	static int[][] reuseAligned(MandelbrotState from, int[][] fromSet,
+	MandelbrotState to)
+	{
+		if (!sameIterations(from, to) || !samePrecision(from, to)) return null;
+		int[] columns = samePointPixels(from.getMinReal(), from.getMaxReal(),
+		from.getXRes(), to.getMinReal(), to.getMaxReal(), to.getXRes());
+		int[] rows = samePointPixels(from.getMinimaginary(),
+		from.getMaximaginary(), from.getYRes(), to.getMinimaginary(),
+		to.getMaximaginary(), to.getYRes());
+		long reused = (long) countAligned(columns) * countAligned(rows);
+		if (reused < MIN_REUSE * to.getXRes() * to.getYRes()) return null;
+		return copySamePoints(fromSet, to, columns, rows);
+	}
+
+	/**
+	 * Helper method used to build the set of a new view from the pixels of
+	 * the previous set at the same points, calculating the rest region by
+	 * region.
+	 *
+	 * @param fromSet the previous set
+	 * @param to the state to render
+	 * @param columns the previous column of each new column, or -1
+	 * @param rows the previous row of each new row, or -1
+	 * @return the set of to
+	 */
+	private static int[][] copySamePoints(int[][] fromSet, MandelbrotState to,
+	int[] columns, int[] rows)
+	{
+		int xRes = to.getXRes();
+		int yRes = to.getYRes();
+		int[][] set = new int[yRes][xRes];
+		// runs of rows which line up, or not, are filled region by region
+		for (int y0 = 0; y0 < yRes; )
+		{
+			boolean rowAligned = rows[y0] >= 0;
+			int y1 = y0 + 1;
+			while (y1 < yRes && (rows[y1] >= 0) == rowAligned) y1++;
+			if (!rowAligned)
+			{
+				to.fillMandelbrotRegion(set, 0, y0, xRes, y1);
+			}
+			else
+			{
+				for (int y = y0; y < y1; y++)
+				{
+					int[] row = set[y];
+					int[] fromRow = fromSet[rows[y]];
+					for (int x = 0; x < xRes; x++)
+					{
+						if (columns[x] >= 0) row[x] = fromRow[columns[x]];
+					}
+				}
+				for (int x0 = 0; x0 < xRes; )
+				{
+					if (columns[x0] >= 0)
+					{
+						x0++;
+						continue;
+					}
+					int x1 = x0 + 1;
+					while (x1 < xRes && columns[x1] < 0) x1++;
+					to.fillMandelbrotRegion(set, x0, y0, x1, y1);
+					x0 = x1;
+				}
+			}
+			y0 = y1;
+		}
+		return set;
+	}
+
+	/**
+	 * Builds a preview of a view lying inside the previous view, as when
+	 * zooming in, by taking for each pixel the nearest pixel of the previous
+	 * set. Nothing is calculated, so the preview can be shown straight away
+	 * while the real set renders.
+	 *
+	 * @param from the state of the previous set
+	 * @param fromSet the previous set
+	 * @param to the state to preview
+	 * @return the preview, or null if to is not inside from
+	 */
+	static int[][] zoomPreview(MandelbrotState from, int[][] fromSet,
+	MandelbrotState to)
+	{
+		int[] columns = nearestPixels(gridPositions(from, to, true),
+		from.getXRes());
+		int[] rows = nearestPixels(gridPositions(from, to, false),
+		from.getYRes());
+		if (columns == null || rows == null) return null;
+		int[][] preview = new int[rows.length][columns.length];
+		for (int y = 0; y < rows.length; y++)
+		{
+			int[] fromRow = fromSet[rows[y]];
+			for (int x = 0; x < columns.length; x++)
+			{
+				preview[y][x] = fromRow[columns[x]];
+			}
+		}
+		return preview;
+	}
+
+	/**
+	 * Renders the set of a view around a finer view lying inside it, as when
+	 * the frames of a zoom animation are rendered from a deeper frame. Each
+	 * pixel inside the finer view takes the value of its nearest finer pixel,
+	 * at most half a finer pixel away, and only the border around it is
+	 * calculated. Values above the new maximum iterations are lowered to it.
+	 *
+	 * @param from the state of the finer set
+	 * @param fromSet the finer set
+	 * @param to the state to render
+	 * @return the set of to, or null if from is coarser than to, has a lower
+	 * maximum iterations or another radius, or lies outside it
+	 */
+	static int[][] zoomAround(MandelbrotState from, int[][] fromSet,
+	MandelbrotState to)
+	{
+		if (from.getMaxIterations() < to.getMaxIterations()
+		|| from.getSqRadius() != to.getSqRadius()
+		|| !finer(from.getRealSpan(), from.getXRes(), to.getRealSpan(),
+		to.getXRes())
+		|| !finer(from.getImaginarySpan(), from.getYRes(),
+		to.getImaginarySpan(), to.getYRes()))
+		{
+			return null;
+		}
+		int[] columns = insidePixels(gridPositions(from, to, true),
+		from.getXRes());
+		int[] rows = insidePixels(gridPositions(from, to, false),
+		from.getYRes());
+		// as from is finer, the pixels inside it are one run along each axis
+		int x0 = firstInside(columns);
+		int y0 = firstInside(rows);
+		if (x0 < 0 || y0 < 0) return null;
+		int x1 = x0 + countAligned(columns);
+		int y1 = y0 + countAligned(rows);
+
+		int xRes = to.getXRes();
+		int yRes = to.getYRes();
+		int maxIterations = Math.max(to.getMaxIterations(), 0);
+		int[][] set = new int[yRes][xRes];
+		for (int y = y0; y < y1; y++)
+		{
+			int[] row = set[y];
+			int[] fromRow = fromSet[rows[y]];
+			for (int x = x0; x < x1; x++)
+			{
+				row[x] = Math.min(fromRow[columns[x]], maxIterations);
+			}
+		}
+		// the rows above and below, then the columns either side
+		fillRegion(to, set, 0, 0, xRes, y0);
+		fillRegion(to, set, 0, y1, xRes, yRes);
+		fillRegion(to, set, 0, y0, x0, y1);
+		fillRegion(to, set, x1, y0, xRes, y1);
+		return set;
+	}
+
+	/**
+	 * Returns true if the pixels of a view along one axis are no wider than
+	 * those of another, to within GRID_TOLERANCE.
+	 */
+	private static boolean finer(BigDecimal fromSpan, int fromRes,
+	BigDecimal toSpan, int toRes)
+	{
+		double fromStep = Math.abs(fromSpan.doubleValue()) / fromRes;
+		double toStep = Math.abs(toSpan.doubleValue()) / toRes;
+		return fromStep > 0 && fromStep <= toStep * (1 + GRID_TOLERANCE);
+	}
+
+	/**
+	 * Returns, for each position, the nearest previous pixel, or -1 where the
+	 * position is outside the previous view.
+	 */
+	private static int[] insidePixels(double[] positions, int fromRes)
+	{
+		int[] pixels = new int[positions.length];
+		for (int x = 0; x < positions.length; x++)
+		{
+			long pixel = Math.round(positions[x]);
+			// Math.round gives 0 for NaN, which the comparison rejects
+			pixels[x] = Math.abs(positions[x] - pixel) <= 0.5 && pixel >= 0
+			&& pixel < fromRes ? (int) pixel : -1;
+		}
+		return pixels;
+	}
+
+	/**
+	 * Returns the index of the first entry of a pixel map which is not -1,
+	 * or -1 if there is none.
+	 */
+	private static int firstInside(int[] pixels)
+	{
+		for (int x = 0; x < pixels.length; x++)
+		{
+			if (pixels[x] >= 0) return x;
+		}
+		return -1;
+	}
+
+	/**
+	 * Calculates the pixels x0 <= x < x1, y0 <= y < y1 of a set, region by
+	 * region where the state allows it, or as a view of their own otherwise.
+	 */
+	private static void fillRegion(MandelbrotState state, int[][] set, int x0,
+	int y0, int x1, int y1)
+	{
+		if (x0 >= x1 || y0 >= y1) return;
+		if (canRenderRegions(state))
+		{
+			state.fillMandelbrotRegion(set, x0, y0, x1, y1);
+			return;
+		}
+		int[][] region = state.getRegionState(x0, y0, x1, y1)
+		.getMandelbrotSet();
+		for (int y = y0; y < y1; y++)
+		{
+			System.arraycopy(region[y - y0], 0, set[y], x0, x1 - x0);
+		}
+	}
+
+	/**
+	 * Returns the positions of the pixels of a new view along one axis,
+	 * measured in pixels of the previous view. Views calculated with doubles
+	 * are measured on the pixel grids MandelbrotCalculator works out from
+	 * their double bounds, and deep views from their precise bounds.
+	 *
+	 * @param from the previous view
+	 * @param to the new view
+	 * @param real true for the real axis, false for the imaginary axis
+	 * @return the position of each new pixel on the previous grid
+	 */
+	private static double[] gridPositions(MandelbrotState from,
+	MandelbrotState to, boolean real)
+	{
+		if (!canRenderRegions(from) || !canRenderRegions(to))
+		{
+			return real ? gridPositions(from.getCentreReal(),
+			from.getRealSpan(), from.getXRes(), to.getCentreReal(),
+			to.getRealSpan(), to.getXRes()) : gridPositions(
+			from.getCentreImaginary(), from.getImaginarySpan(),
+			from.getYRes(), to.getCentreImaginary(), to.getImaginarySpan(),
+			to.getYRes());
+		}
+		return real ? gridPositions(from.getMinReal(), from.getMaxReal(),
+		from.getXRes(), to.getMinReal(), to.getMaxReal(), to.getXRes())
+		: gridPositions(from.getMinimaginary(), from.getMaximaginary(),
+		from.getYRes(), to.getMinimaginary(), to.getMaximaginary(),
+		to.getYRes());
+	}
+
+	/**
+	 * Returns the positions of the pixels of a new view along one axis,
+	 * measured in pixels of the previous view, from their double bounds.
+	 *
+	 * @param fromMin the lower bound of the previous view
+	 * @param fromMax the upper bound of the previous view
+	 * @param fromRes the number of pixels of the previous view
+	 * @param toMin the lower bound of the new view
+	 * @param toMax the upper bound of the new view
+	 * @param toRes the number of pixels of the new view
+	 * @return the position of each new pixel on the previous grid
+	 */
+	private static double[] gridPositions(double fromMin, double fromMax,
+	int fromRes, double toMin, double toMax, int toRes)
+	{
+		double fromStep = (fromMax - fromMin) / fromRes;
+		double toStep = (toMax - toMin) / toRes;
+		double[] positions = new double[toRes];
+		if (fromStep == 0 || !Double.isFinite(fromStep)
+		|| !Double.isFinite(toStep))
+		{
+			Arrays.fill(positions, Double.NaN);
+			return positions;
+		}
+		// the lower bounds are subtracted exactly so deep views line up too
+		double offset = new BigDecimal(toMin).subtract(new BigDecimal(fromMin))
+		.doubleValue() / fromStep;
+		double ratio = toStep / fromStep;
+		for (int x = 0; x < toRes; x++)
+		{
+			positions[x] = offset + x * ratio;
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns the positions of the pixels of a new view along one axis,
+	 * measured in pixels of the previous view, from their precise bounds.
+	 *
+	 * @param fromCentre the centre of the previous view
+	 * @param fromSpan the span of the previous view
+	 * @param fromRes the number of pixels of the previous view
+	 * @param toCentre the centre of the new view
+	 * @param toSpan the span of the new view
+	 * @param toRes the number of pixels of the new view
+	 * @return the position of each new pixel on the previous grid
+	 */
+	private static double[] gridPositions(BigDecimal fromCentre,
+	BigDecimal fromSpan, int fromRes, BigDecimal toCentre, BigDecimal toSpan,
+	int toRes)
+	{
+		double fromStep = fromSpan.doubleValue() / fromRes;
+		double toStep = toSpan.doubleValue() / toRes;
+		double[] positions = new double[toRes];
+		if (fromStep == 0)
+		{
+			Arrays.fill(positions, Double.NaN);
+			return positions;
+		}
+		// the lower bounds are subtracted exactly so deep views line up too
+		BigDecimal fromMin = fromCentre.subtract(fromSpan.multiply(HALF));
+		BigDecimal toMin = toCentre.subtract(toSpan.multiply(HALF));
+		double offset = toMin.subtract(fromMin, MathContext.DECIMAL128)
+		.doubleValue() / fromStep;
+		double ratio = toStep / fromStep;
+		for (int x = 0; x < toRes; x++)
+		{
+			positions[x] = offset + x * ratio;
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns, for each pixel of a new view along one axis, the pixel of the
+	 * previous view calculated at exactly the same point, or -1 where there
+	 * is none. The points are worked out from the double bounds as
+	 * MandelbrotCalculator works them out.
+	 *
+	 * @param fromMin the lower bound of the previous view
+	 * @param fromMax the upper bound of the previous view
+	 * @param fromRes the number of pixels of the previous view
+	 * @param toMin the lower bound of the new view
+	 * @param toMax the upper bound of the new view
+	 * @param toRes the number of pixels of the new view
+	 * @return the previous pixel of each new pixel, or -1
+	 */
+	private static int[] samePointPixels(double fromMin, double fromMax,
+	int fromRes, double toMin, double toMax, int toRes)
+	{
+		double fromStep = (fromMax - fromMin) / fromRes;
+		double toStep = (toMax - toMin) / toRes;
+		int[] pixels = new int[toRes];
+		for (int x = 0; x < toRes; x++)
+		{
+			double point = toMin + x * toStep;
+			long pixel = Math.round((point - fromMin) / fromStep);
+			// Math.round gives 0 for NaN, which the comparison rejects
+			pixels[x] = pixel >= 0 && pixel < fromRes
+			&& fromMin + (int) pixel * fromStep == point ? (int) pixel : -1;
+		}
+		return pixels;
+	}
+
+	/**
+	 * Returns, for each position, the nearest previous pixel, or null if any
+	 * position is outside the previous view.
+	 */
+	private static int[] nearestPixels(double[] positions, int fromRes)
+	{
+		int[] pixels = new int[positions.length];
+		for (int x = 0; x < positions.length; x++)
+		{
+			long pixel = Math.round(positions[x]);
+			// Math.round gives 0 for NaN, which the comparison rejects
+			if (!(Math.abs(positions[x] - pixel) <= 0.5) || pixel < 0
+			|| pixel >= fromRes)
+			{
+				return null;
+			}
+			pixels[x] = (int) pixel;
+		}
+		return pixels;
+	}
+
+	/**
+	 * Returns the number of entries of a pixel map which are not -1.
+	 */
+	private static int countAligned(int[] pixels)
+	{
+		int count = 0;
+		for (int pixel : pixels)
+		{
+			if (pixel >= 0) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Renders the set of the previous view with a lower maximum iterations.
+	 * No pixel needs iterating, as each new value is the lower of its previous
+	 * value and the new maximum.
+	 *
+	 * @param from the state of the previous set
+	 * @param fromSet the previous set
+	 * @param to the state to render
+	 * @return the set of to, or null if to is not the view of from with a
+	 * lower maximum iterations
+	 */
+	static int[][] lowerIterations(MandelbrotState from, int[][] fromSet,
+	MandelbrotState to)
+	{
+		if (!sameView(from, to)
+		|| to.getMaxIterations() >= from.getMaxIterations())
+		{
+			return null;
+		}
+		int maxIterations = Math.max(to.getMaxIterations(), 0);
+		int[][] set = new int[fromSet.length][];
+		for (int y = 0; y < set.length; y++)
+		{
+			set[y] = fromSet[y].clone();
+			for (int x = 0; x < set[y].length; x++)
+			{
+				set[y][x] = Math.min(set[y][x], maxIterations);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Renders the set of the previous view with a higher maximum iterations.
+	 * Pixels which escaped keep their values, and only the pixels which
+	 * reached the previous maximum are iterated further, from the values of
+	 * Z in the orbit buffer if it belongs to the previous set, or from the
+	 * origin otherwise.
+	 *
+	 * @param from the state of the previous set
+	 * @param fromSet the previous set
+	 * @param orbits a copy of the orbit buffer of the previous set, or a new
+	 * one, which is carried on to belong to the returned set
+	 * @param to the state to render
+	 * @return the set of to, or null if to is not the view of from with a
+	 * higher maximum iterations
+	 */
+	static int[][] raiseIterations(MandelbrotState from, int[][] fromSet,
+	OrbitBuffer orbits, MandelbrotState to)
+	{
+		if (!canRaiseIterations(from, to)) return null;
+		if (orbits.getIterations() != from.getMaxIterations())
+		{
+			orbits.reset();
+		}
+		int[][] set = new int[fromSet.length][];
+		for (int y = 0; y < set.length; y++)
+		{
+			set[y] = fromSet[y].clone();
+		}
+		to.continueMandelbrotSet(set, from.getMaxIterations(), orbits);
+		return set;
+	}
+
+	/**
+	 * Returns true if raiseIterations would render to from the set of from.
+	 *
+	 * @param from the state of the previous set
+	 * @param to the state to render
+	 * @return true if to is the view of from with a higher maximum iterations
+	 */
+	static boolean canRaiseIterations(MandelbrotState from,
+	MandelbrotState to)
+	{
+		return sameView(from, to) && from.getMaxIterations() >= 0
+		&& to.getMaxIterations() > from.getMaxIterations();
+	}
+
+	/**
+	 * Returns true if both states render the same view pixel by pixel in
+	 * double precision with the same resolution, squared radius and render
+	 * settings, whatever their maximum iterations.
+	 */
+	private static boolean sameView(MandelbrotState from, MandelbrotState to)
+	{
+		return from != null && from.getXRes() == to.getXRes()
+		&& from.getYRes() == to.getYRes()
+		&& from.getMinReal() == to.getMinReal()
+		&& from.getMaxReal() == to.getMaxReal()
+		&& from.getMinimaginary() == to.getMinimaginary()
+		&& from.getMaximaginary() == to.getMaximaginary()
+		&& from.getSqRadius() == to.getSqRadius()
+		&& from.sameRenderSettings(to)
+		&& canRenderRegions(from) && canRenderRegions(to);
+	}
+
+	/**
+	 * Returns true if both states render pixel by pixel in double precision
+	 * with the same resolution, maximum iterations, squared radius and render
+	 * settings, so their pixels may be shared.
+	 *
+	 * @param from the state of the previous set
+	 * @param to the state to render
+	 * @return true if pixels of from may be reused for to
+	 */
+	static boolean sameSettings(MandelbrotState from, MandelbrotState to)
+	{
+		return from.getXRes() == to.getXRes()
+		&& from.getYRes() == to.getYRes() && sameIterations(from, to);
+	}
+
+	/**
+	 * Returns true if both states render pixel by pixel in double precision
+	 * with the same maximum iterations, squared radius and render settings,
+	 * so a pixel at the same point has the same value in both.
+	 *
+	 * @param from the state of the previous set
+	 * @param to the state to render
+	 * @return true if pixels at the same point agree
+	 */
+	static boolean sameIterations(MandelbrotState from, MandelbrotState to)
+	{
+		return from.getMaxIterations() == to.getMaxIterations()
+		&& from.getSqRadius() == to.getSqRadius()
+		&& from.sameRenderSettings(to)
+		&& canRenderRegions(from) && canRenderRegions(to);
+	}
+
+	/**
+	 * Returns true if the state's set is rendered pixel by pixel with doubles,
+	 * so that its pixels can be recalculated region by region.
+	 *
+	 * @param state the state to check
+	 * @return true if the state is neither rendered by a deep zoom calculator
+	 * nor put together from cached tiles
+	 */
+	static boolean canRenderRegions(MandelbrotState state)
+	{
+		return !(state.getDeepZoom() && state.isDeepZoom())
+		&& state.getRenderMode() != MandelbrotCalculator.CACHED_TILE_RENDER;
+	}
+
+	/**
+	 * Returns true if both states are calculated in the same precision, so a
+	 * pixel at the same point has the same value in both.
+	 */
+	private static boolean samePrecision(MandelbrotState from,
+	MandelbrotState to)
+	{
+		return from.isSinglePrecisionSet() == to.isSinglePrecisionSet();
+	}
+
+	/**
+	 * Returns true if the pixels of two views with the same resolution are
+	 * the same distance apart along one axis.
+	 */
+	private static boolean sameStep(double fromMin, double fromMax,
+	double toMin, double toMax)
+	{
+		return fromMax - fromMin == toMax - toMin;
+	}
+}
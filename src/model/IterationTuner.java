@@ -0,0 +1,187 @@
+package model;
+
+import java.math.BigDecimal;
+
+/**
+ * This class chooses the maximum iterations of a view, so that deep views
+ * are given enough iterations to show their detail and shallow views are
+ * not slowed down by iterations they do not need.
+ *
+ * The first guess comes from the zoom depth alone: INITIAL_MAX_ITERATIONS
+ * at the initial view, growing with the square of the number of decades
+ * zoomed in. It is only a starting point, used when nothing better is
+ * known. The escape counts of the last rendered set are the better guide:
+ * if more than ESCAPING_NEAR_CAP of its pixels escaped in the top half of
+ * its iterations, detail is still being cut off and twice the iterations
+ * are wanted; otherwise twice the iterations by which nearly all its
+ * escaping pixels had escaped are enough, however few that is. The last
+ * rendered set is only asked when it was within a decade of the same zoom
+ * depth and some of its pixels escaped, as the escape counts of a view much
+ * shallower or deeper say little about this one. Near the boundary escape
+ * counts have a long tail, which would have the iterations raised on every
+ * pan, so the depth guess also caps them at HISTOGRAM_RANGE times itself.
+ * A view with no area has no depth, and starts from INITIAL_MAX_ITERATIONS.
+ *
+ * The choice is rounded to a power of two, and the current maximum is kept
+ * unless the choice is at least twice or at most a quarter of it, so that
+ * pans and small zooms keep their iterations and can reuse pixels.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class IterationTuner
+{
+	/**
+	 * The most iterations ever chosen.
+	 */
+	static final int MAX_ITERATIONS = 1 << 16;
+
+	/**
+	 * The fraction of pixels escaping in the top half of the iterations
+	 * above which the iterations are raised.
+	 */
+	static final double ESCAPING_NEAR_CAP = 0.002;
+
+	/**
+	 * The most times the escape counts may raise the iterations above those
+	 * wanted at the zoom depth.
+	 */
+	static final int HISTOGRAM_RANGE = 4;
+
+	/**
+	 * The fraction of escaping pixels whose escape counts must be covered.
+	 */
+	private static final double COVERED = 0.999;
+
+	/**
+	 * The log10 of the area of the initial view.
+	 */
+	private static final double INITIAL_LOG_AREA = Math.log10(
+	(MandelbrotCalculator.INITIAL_MAX_REAL
+	- MandelbrotCalculator.INITIAL_MIN_REAL)
+	* (MandelbrotCalculator.INITIAL_MAX_IMAGINARY
+	- MandelbrotCalculator.INITIAL_MIN_IMAGINARY));
+
+	/**
+	 * Chooses the maximum iterations of a view.
+	 *
+	 * @param view the view to choose the iterations of
+	 * @param current the maximum iterations of the current view
+	 * @param previousState the MandelbrotState of the last rendered set, or
+	 * null
+	 * @param previousSet the last rendered set, or null
+	 * @return the maximum iterations to render the view with
+	 */
+	static int chooseIterations(MandelbrotState view, int current,
+	MandelbrotState previousState, int[][] previousSet)
+	{
+		int depth = depthIterations(view);
+		int wanted = depth;
+		if (previousState != null && Math.abs(logArea(view)
+		- logArea(previousState)) <= 2)
+		{
+			int measured = histogramIterations(previousState, previousSet);
+			// the depth guess is only a ceiling once escape counts are known
+			if (measured > 0)
+			{
+				wanted = Math.min(measured, HISTOGRAM_RANGE * depth);
+			}
+		}
+		wanted = Math.min(Integer.highestOneBit(Math.max(wanted - 1, 1)) << 1,
+		MAX_ITERATIONS);
+		if (wanted >= 2 * (long) current || wanted * 4L <= current)
+		{
+			return wanted;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the iterations wanted at the zoom depth of a view.
+	 *
+	 * @param view the view
+	 * @return INITIAL_MAX_ITERATIONS times the square of one more than the
+	 * decades zoomed in, or INITIAL_MAX_ITERATIONS if the view has no area
+	 */
+	static int depthIterations(MandelbrotState view)
+	{
+		double logArea = logArea(view);
+		// a zero span would otherwise count as infinitely deep
+		if (Double.isInfinite(logArea))
+		{
+			return MandelbrotCalculator.INITIAL_MAX_ITERATIONS;
+		}
+		double decades = Math.max(0, (INITIAL_LOG_AREA - logArea) / 2);
+		double iterations = MandelbrotCalculator.INITIAL_MAX_ITERATIONS
+		* (1 + decades) * (1 + decades);
+		return (int) Math.min(iterations, MAX_ITERATIONS);
+	}
+
+	/**
+	 * Returns the iterations wanted from the escape counts of a rendered set.
+	 *
+	 * @param state the MandelbrotState the set was rendered from, or null
+	 * @param set the set, or null
+	 * @return twice the maximum iterations of the set if pixels are still
+	 * escaping near it, otherwise twice the count by which nearly all
+	 * escaping pixels escaped, or 0 if there is no set, no pixel escaped or
+	 * the maximum iterations of the set are not positive
+	 */
+	static int histogramIterations(MandelbrotState state, int[][] set)
+	{
+		if (state == null || set == null || state.getMaxIterations() <= 0)
+		{
+			return 0;
+		}
+		int cap = state.getMaxIterations();
+		// the counts of pixels escaping after each number of iterations
+		long[] histogram = new long[cap + 1];
+		long pixels = 0;
+		for (int[] row : set)
+		{
+			for (int value : row)
+			{
+				histogram[Math.max(0, Math.min(value, cap))]++;
+			}
+			pixels += row.length;
+		}
+		long escaped = pixels - histogram[cap];
+		long nearCap = 0;
+		for (int n = cap / 2; n < cap; n++)
+		{
+			nearCap += histogram[n];
+		}
+		if (nearCap > ESCAPING_NEAR_CAP * pixels)
+		{
+			return (int) Math.min(2L * cap, MAX_ITERATIONS);
+		}
+		if (escaped == 0) return 0;
+		long covered = 0;
+		for (int n = 0; n < cap; n++)
+		{
+			covered += histogram[n];
+			if (covered >= COVERED * escaped) return 2 * Math.max(n, 1);
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the log10 of the area of a view.
+	 */
+	private static double logArea(MandelbrotState view)
+	{
+		return log10(view.getRealSpan().abs()) + log10(
+		view.getImaginarySpan().abs());
+	}
+
+	/**
+	 * Returns the log10 of a positive number, even one too small for a
+	 * double.
+	 */
+	private static double log10(BigDecimal x)
+	{
+		int exponent = x.precision() - x.scale();
+		return exponent + Math.log10(x.scaleByPowerOfTen(-exponent)
+		.doubleValue());
+	}
+}
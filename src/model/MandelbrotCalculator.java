@@ -29,11 +29,52 @@ of the authors and should not be interpreted as representing official policies,
 either expressed or implied, of the FreeBSD Project.
 */
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
 /**
  * The MandelbrotCalculator class contains methods which establish the Mandelbrot set.
  * The calcMandelbrotSet method below iterates over X,Y positions and establishes for specified parameter values a 2-D array containing
  * for each [y][x] pixel an iteration value that may be mapped to colour and used to visualise the Mandelbrot set.
  * The calcMandelbrotSet method iteratively calls for each X,Y coordinate, the calcMandel method (also included here) which establishes the iteration value for a particular X,Y coordinate.
+ * The frame is split into tiles which are rendered on a shared fork-join pool, so idle cores can steal the expensive tiles from busy ones.
+ * The size of that pool may be changed with setParallelism; a parallelism of 1 renders on the calling thread.
+ * Each tile is calculated with the kernel chosen by setKernel: SCALAR_KERNEL iterates one pixel at a time, while BATCHED_KERNEL
+ * advances LANES neighbouring pixels of a row in lock-step and masks out each one as it escapes. Both give identical results.
+ * The batched kernel is plain scalar Java over short arrays, which the JIT may or may not vectorise; it does not use the incubating
+ * Vector API, as that needs --add-modules jdk.incubator.vector wherever the code is built and run. It is typically about twice as
+ * fast as the scalar kernel, short of the four to eight times explicit SIMD lanes could give.
+ * For shallow views the batched kernel can work in floats on FLOAT_LANES pixels at a time, halving the memory and doubling the lanes
+ * per batch. Floats change a few iteration values near the edge of the set, so they are off unless setSinglePrecision(true)
+ * is called, and by default every kernel gives the exact double result. Even then a frame only uses floats when its pixel spacing is at least FLOAT_SPACING of its largest coordinate and
+ * maxIterations is at most FLOAT_MAX_ITERATIONS, otherwise it falls back to doubles.
+ * The precision is chosen once for the whole frame, and rows, columns and spaced pixels all go through calcPixels, so a pixel gets
+ * the same value however the frame is split up.
+ * Both kernels also skip the iteration of interior points where it can be proven they never escape: points inside the main cardioid or
+ * the period-2 bulb are recognised analytically, and an orbit that returns exactly to an earlier value is known to be periodic.
+ * Each of these checks can be switched off with setInteriorCheck and setPeriodicityCheck.
+ *
+ * The set is symmetric about the real axis, so when calculating every pixel a row whose imaginary component is exactly the negative
+ * of another row's is not iterated but copied from that row once it is done; iterating conj(C) gives exactly conj(Z) in floating point.
+ *
+ * A render can be stopped early by setting the flag given to setCancelFlag; the calculation then checks it between rows and
+ * throws a CancellationException.
+ *
+ * setRenderMode chooses between calculating every pixel (BRUTE_FORCE_RENDER) and Mariani-Silver subdivision (SUBDIVISION_RENDER),
+ * which calculates only the border of a rectangle, fills it if the whole border has one iteration value and otherwise splits it in two
+ * and repeats for each half in parallel. Subdivision can miss detail smaller than a rectangle, so setVerifySubdivision makes it also
+ * calculate the set by brute force and count the pixels that differ.
  *
  * Example usage -- To obtain a 800x800 2-D array of Mandelbrot set values for the initial parameter values
  *
@@ -55,6 +96,383 @@ public class MandelbrotCalculator {
     // Default parameter values
     protected static final double DEFAULT_RADIUS_SQUARED = 4.0;
 
+    // Default render settings
+    protected static final int DEFAULT_TILE_SIZE = 64;
+
+    // Iteration kernels
+    public static final int SCALAR_KERNEL = 0;
+    public static final int BATCHED_KERNEL = 1;
+
+    // The number of pixels the batched kernel iterates in lock-step
+    public static final int LANES = 8;
+
+    // The number of pixels the batched kernel iterates in lock-step in single precision
+    public static final int FLOAT_LANES = 8;
+
+    // The smallest pixel spacing, relative to the largest coordinate of a tile, for which floats are used
+    protected static final double FLOAT_SPACING = 1e-4;
+
+    // The largest maxIterations for which floats are used, as rounding errors grow with every iteration
+    protected static final int FLOAT_MAX_ITERATIONS = 1000;
+
+    // Render modes
+    public static final int BRUTE_FORCE_RENDER = 0;
+    public static final int SUBDIVISION_RENDER = 1;
+    public static final int CACHED_TILE_RENDER = 2;
+
+    // The default number of bytes of tiles kept by the tile cache
+    public static final long DEFAULT_TILE_CACHE_BUDGET = 64L * 1024 * 1024;
+
+    // The pixel strides of the passes of a progressive render, coarsest first
+    protected static final int[] PROGRESSIVE_STRIDES = {8, 4, 2, 1};
+
+    // The width or height in pixels below which a rectangle is calculated rather than subdivided
+    protected static final int MIN_SUBDIVISION_SIZE = 6;
+
+    // The pool shared by all calculators to render tiles in parallel
+    private static volatile ForkJoinPool renderPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // The width and height in pixels below which a tile is no longer split
+    private static volatile int tileSize = DEFAULT_TILE_SIZE;
+
+    // The tiles on the grid of world pixels shared by all calculators in CACHED_TILE_RENDER mode
+    private static final TileCache tileCache = new TileCache(DEFAULT_TILE_CACHE_BUDGET);
+
+    // The kernel used to iterate the pixels of each tile
+    private int kernel = BATCHED_KERNEL;
+
+    // Whether shallow frames are calculated in single precision, which is opt-in as it is not exact
+    private boolean singlePrecision = false;
+
+    // Whether points in the main cardioid and period-2 bulb are recognised without iterating
+    private boolean interiorCheck = true;
+
+    // Whether orbits are checked for cycles while iterating
+    private boolean periodicityCheck = true;
+
+    // Whether every pixel is calculated or the frame is subdivided
+    private int renderMode = BRUTE_FORCE_RENDER;
+
+    // Whether subdivided renders are checked against a brute force render
+    private boolean verifySubdivision = false;
+
+    // The number of pixels which differed in the last verified subdivided render
+    private volatile int subdivisionMismatches;
+
+    // Whether views too deep for double precision are rendered by perturbation
+    private boolean deepZoom = true;
+
+    // Becomes true when the render using this calculator should stop, or null if it is never stopped
+    private volatile AtomicBoolean cancelFlag;
+
+    // The pool renders using this calculator run on, or null for the shared render pool
+    private volatile ForkJoinPool pool;
+
+
+    /**
+     * Returns the number of threads used to render the Mandelbrot set.
+     * @return the parallelism of the render pool.
+     */
+    public static int getParallelism() {
+        return renderPool.getParallelism();
+    }
+
+    /**
+     * Returns the pool renders using this calculator run on, for the other renderers of this package.
+     * @return the pool set by setRenderPool, or the shared render pool.
+     */
+    ForkJoinPool getRenderPool() {
+        ForkJoinPool own = pool;
+        return own != null ? own : renderPool;
+    }
+
+    /**
+     * Sets the pool renders using this calculator run on, in place of the shared render pool, so that background work such as
+     * speculative renders can be kept off the threads rendering what the user is waiting for. The pool is not copied by
+     * copyRenderSettings, as it belongs to one render.
+     * @param pool the pool to render on, or null for the shared render pool.
+     */
+    void setRenderPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the number of threads used to render the Mandelbrot set. The previous pool is shut down once its running renders complete.
+     * @param parallelism the number of render threads, 1 meaning the set is rendered on the calling thread.
+     * @throws IllegalArgumentException if parallelism is 0 or smaller.
+     */
+    public static synchronized void setParallelism(int parallelism) throws IllegalArgumentException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism cannot be 0 or smaller");
+        }
+        ForkJoinPool old = renderPool;
+        renderPool = new ForkJoinPool(parallelism);
+        old.shutdown();
+    }
+
+    /**
+     * Returns the width and height in pixels of the tiles the frame is split into.
+     * @return the tile size in pixels.
+     */
+    public static int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the width and height in pixels of the tiles the frame is split into.
+     * @param size the tile size in pixels.
+     * @throws IllegalArgumentException if size is 0 or smaller.
+     */
+    public static void setTileSize(int size) throws IllegalArgumentException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Tile size cannot be 0 or smaller");
+        }
+        tileSize = size;
+    }
+
+    /**
+     * Returns the most bytes of tiles kept for CACHED_TILE_RENDER mode.
+     * @return the tile cache budget in bytes.
+     */
+    public static long getTileCacheBudget() {
+        return tileCache.getBudget();
+    }
+
+    /**
+     * Sets the most bytes of tiles kept for CACHED_TILE_RENDER mode, the least recently used being dropped first.
+     * @param budget the tile cache budget in bytes, less than one tile turning the cache off.
+     * @throws IllegalArgumentException if budget is negative.
+     */
+    public static void setTileCacheBudget(long budget) throws IllegalArgumentException {
+        tileCache.setBudget(budget);
+    }
+
+    /**
+     * Opens a tile store in a directory beneath the tile cache, so that tiles calculated in CACHED_TILE_RENDER mode are kept on disk
+     * and read back in later runs rather than calculated again. Any store opened before is closed first. A store is locked while open,
+     * so a store in use by another program cannot be opened, and tiles are then only kept in memory.
+     * @param directory the directory to keep the store's files in, created if needed.
+     * @param cap the size in bytes past which the least recently used tiles are dropped from disk.
+     * @throws IOException if the store cannot be opened, or is in use by another program.
+     * @throws IllegalArgumentException if cap is too small to hold two tiles.
+     */
+    public static void openTileStore(Path directory, long cap) throws IOException, IllegalArgumentException {
+        tileCache.setStore(null);
+        tileCache.setStore(new TileStore(directory, cap));
+    }
+
+    /**
+     * Closes the tile store, if one is open, so that tiles are only kept in memory.
+     */
+    public static void closeTileStore() {
+        tileCache.setStore(null);
+    }
+
+    /**
+     * Returns the number of tiles found in the tile cache, in memory or in the tile store.
+     * @return the number of tile cache hits.
+     */
+    public static long getTileCacheHits() {
+        return tileCache.getHits();
+    }
+
+    /**
+     * Returns the number of tiles not found in the tile cache, which had to be calculated.
+     * @return the number of tile cache misses.
+     */
+    public static long getTileCacheMisses() {
+        return tileCache.getMisses();
+    }
+
+    /**
+     * Returns the kernel used to iterate the pixels of the Mandelbrot set.
+     * @return SCALAR_KERNEL or BATCHED_KERNEL.
+     */
+    public int getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Sets the kernel used to iterate the pixels of the Mandelbrot set.
+     * @param kernel SCALAR_KERNEL or BATCHED_KERNEL.
+     * @throws IllegalArgumentException if kernel is not one of the kernels above.
+     */
+    public void setKernel(int kernel) throws IllegalArgumentException {
+        if (kernel != SCALAR_KERNEL && kernel != BATCHED_KERNEL) {
+            throw new IllegalArgumentException("Unknown kernel " + kernel);
+        }
+        this.kernel = kernel;
+    }
+
+    /**
+     * Returns whether the batched kernel calculates shallow frames in single precision, which is false by default.
+     * @return true if floats are used where they are precise enough.
+     */
+    public boolean getSinglePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * Sets whether the batched kernel calculates shallow frames in single precision. Floats give slightly different iteration values
+     * from doubles near the edge of the set, so this should only be switched on when speed matters more than the exact double result.
+     * @param singlePrecision true to use floats where they are precise enough.
+     */
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    /**
+     * Returns whether points in the main cardioid and period-2 bulb are given maxIterations without iterating.
+     * @return true if the check is made.
+     */
+    public boolean getInteriorCheck() {
+        return interiorCheck;
+    }
+
+    /**
+     * Sets whether points in the main cardioid and period-2 bulb are given maxIterations without iterating.
+     * @param interiorCheck true to make the check.
+     */
+    public void setInteriorCheck(boolean interiorCheck) {
+        this.interiorCheck = interiorCheck;
+    }
+
+    /**
+     * Returns whether iteration stops with maxIterations once the orbit of Z is found to repeat.
+     * @return true if the check is made.
+     */
+    public boolean getPeriodicityCheck() {
+        return periodicityCheck;
+    }
+
+    /**
+     * Sets whether iteration stops with maxIterations once the orbit of Z is found to repeat.
+     * @param periodicityCheck true to make the check.
+     */
+    public void setPeriodicityCheck(boolean periodicityCheck) {
+        this.periodicityCheck = periodicityCheck;
+    }
+
+    /**
+     * Returns how the frame is rendered.
+     * @return BRUTE_FORCE_RENDER, SUBDIVISION_RENDER or CACHED_TILE_RENDER.
+     */
+    public int getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Sets how the frame is rendered. In CACHED_TILE_RENDER mode every pixel takes the value of the nearest world pixel of the tile cache's
+     * grid, at the zoom level closest to the pixel spacing, so that views sharing an area share tiles.
+     * @param renderMode BRUTE_FORCE_RENDER, SUBDIVISION_RENDER or CACHED_TILE_RENDER.
+     * @throws IllegalArgumentException if renderMode is not one of the modes above.
+     */
+    public void setRenderMode(int renderMode) throws IllegalArgumentException {
+        if (renderMode != BRUTE_FORCE_RENDER && renderMode != SUBDIVISION_RENDER && renderMode != CACHED_TILE_RENDER) {
+            throw new IllegalArgumentException("Unknown render mode " + renderMode);
+        }
+        this.renderMode = renderMode;
+    }
+
+    /**
+     * Returns whether subdivided renders are checked against a brute force render.
+     * @return true if subdivided renders are checked.
+     */
+    public boolean getVerifySubdivision() {
+        return verifySubdivision;
+    }
+
+    /**
+     * Sets whether subdivided renders are checked against a brute force render. When checked, the brute force set is the one returned
+     * and the number of pixels the subdivision got wrong is kept for getSubdivisionMismatches.
+     * @param verifySubdivision true to check subdivided renders.
+     */
+    public void setVerifySubdivision(boolean verifySubdivision) {
+        this.verifySubdivision = verifySubdivision;
+    }
+
+    /**
+     * Returns the number of pixels which differed between the subdivided and brute force sets in the last verified render.
+     * @return the number of differing pixels.
+     */
+    public int getSubdivisionMismatches() {
+        return subdivisionMismatches;
+    }
+
+    /**
+     * Returns whether views too deep for double precision are rendered by perturbation around a high precision reference orbit.
+     * @return true if deep views are rendered by perturbation.
+     */
+    public boolean getDeepZoom() {
+        return deepZoom;
+    }
+
+    /**
+     * Sets whether views too deep for double precision are rendered by perturbation around a high precision reference orbit.
+     * @param deepZoom true to render deep views by perturbation.
+     */
+    public void setDeepZoom(boolean deepZoom) {
+        this.deepZoom = deepZoom;
+    }
+
+    /**
+     * Sets the flag which stops renders using this calculator when it becomes true. The flag is not copied by copyRenderSettings,
+     * as it belongs to one render.
+     * @param cancelFlag the flag to check, or null if renders should never stop early.
+     */
+    void setCancelFlag(AtomicBoolean cancelFlag) {
+        this.cancelFlag = cancelFlag;
+    }
+
+    /**
+     * Method which stops the current render if its cancel flag has been set.
+     * @throws CancellationException if the render should stop.
+     */
+    void checkCancelled() throws CancellationException {
+        AtomicBoolean flag = cancelFlag;
+        if (flag != null && flag.get()) {
+            throw new CancellationException("Render cancelled");
+        }
+    }
+
+    /**
+     * Copies the kernel, precision, interior checks, render mode and deep zoom setting of another calculator, so that it and this one calculate a set
+     * in the same way.
+     * @param other the calculator whose settings are copied.
+     */
+    protected void copyRenderSettings(MandelbrotCalculator other) {
+        this.kernel = other.kernel;
+        this.singlePrecision = other.singlePrecision;
+        this.interiorCheck = other.interiorCheck;
+        this.periodicityCheck = other.periodicityCheck;
+        this.renderMode = other.renderMode;
+        this.verifySubdivision = other.verifySubdivision;
+        this.deepZoom = other.deepZoom;
+    }
+
+    /**
+     * Method which tests whether C lies strictly inside the main cardioid or the period-2 bulb of the Mandelbrot set.
+     * The orbit of such a C never leaves the circle of radius 2, so the test is only made when radiusSquared is at least 4.
+     *
+     * @param cReal the real component of the constant C.
+     * @param cImaginary the imaginary component of the constant C.
+     * @param radiusSquared the squared radius used to decide whether Z escaped.
+     * @return true if C is known to never escape.
+     */
+    boolean isInterior(double cReal, double cImaginary, double radiusSquared){
+        if (!interiorCheck || radiusSquared < 4.0)
+            return false;
+        // main cardioid: q * (q + (x - 1/4)) < y^2 / 4 where q = (x - 1/4)^2 + y^2
+        double xq = cReal - 0.25;
+        double yy = cImaginary * cImaginary;
+        double q = xq * xq + yy;
+        if (q * (q + xq) < 0.25 * yy)
+            return true;
+        // period-2 bulb: the disc of radius 1/4 around -1
+        double xb = cReal + 1.0;
+        return xb * xb + yy < 0.0625;
+    }
+
 
 
     /**
@@ -78,9 +496,77 @@ public class MandelbrotCalculator {
         // Z = zr + i*zi
         // C = cr + i*ci
         // Z^2 = zr^2 + 2zr*i*zi + i^2*zi^2 = (zr^2 - zi^2) + i*2zr*zi
+        if (maxIterations > 0 && isInterior(cReal, cImaginary, radiusSquared))
+            return maxIterations;
         int iterations = 0;
         double zr = 0;
         double zi = 0;
+        // Brent's cycle check: Z is compared with a saved value that is moved on after 1, 2, 4, 8... iterations
+        double savedZr = 0;
+        double savedZi = 0;
+        int checkLength = 1;
+        int checkCount = 0;
+        boolean outside = false;
+        while (iterations < maxIterations && !outside) {
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            double nzr = zr2 - zi2 + cReal;
+            double nzi = 2 * zr * zi + cImaginary;
+            zr = nzr;
+            zi = nzi;
+            if ((zr2 + zi2) > radiusSquared)
+                outside = true;
+            else if (periodicityCheck) {
+                // every value since the saved one stayed inside, so a repeat means Z cycles forever
+                if (zr == savedZr && zi == savedZi)
+                    return maxIterations;
+                if (++checkCount == checkLength) {
+                    checkCount = 0;
+                    checkLength *= 2;
+                    savedZr = zr;
+                    savedZi = zi;
+                }
+            }
+            iterations++;
+        }
+        return iterations;
+    }
+
+
+
+    /**
+     * Method which carries on the iteration of calcMandel from a saved value of Z, writing back the value Z reached if it still has not escaped.
+     * A saved value of NaN marks a C known never to escape. When iteration starts from the origin, C is also tested with isInterior,
+     * and any C found never to escape, by that test or the cycle check, has NaN saved for it.
+     * A saved value of +Infinity marks a C which escaped on exactly the iterations which gave the saved value, so its count stays as it is;
+     * it is saved for any C which escapes on exactly maxIterations, whose count cannot be told apart from one which never escaped.
+     *
+     * @param cReal the real component of the constant C.
+     * @param cImaginary the imaginary component of the constant C.
+     * @param zReal the saved real components of Z, of which element x is used.
+     * @param zImaginary the saved imaginary components of Z, of which element x is used.
+     * @param x the index of the pixel in zReal and zImaginary.
+     * @param iterations the number of iterations which gave the saved value of Z.
+     * @param maxIterations the maximum number of iterations over which to iterate the equation until assuming Z will remain bounded.
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     * @return the number iterations for the value of Z to grow outside of the bounding radius, or maxIterations if it never escaped.
+     */
+    private int calcMandelContinued(double cReal, double cImaginary, double[] zReal, double[] zImaginary, int x, int iterations, int maxIterations, double radiusSquared){
+        double zr = zReal[x];
+        double zi = zImaginary[x];
+        if (Double.isNaN(zr))
+            return maxIterations;
+        if (zr == Double.POSITIVE_INFINITY)
+            return iterations;
+        if (iterations == 0 && maxIterations > 0 && isInterior(cReal, cImaginary, radiusSquared)) {
+            zReal[x] = Double.NaN;
+            return maxIterations;
+        }
+        // the cycle check of calcMandel works from any point of the orbit
+        double savedZr = zr;
+        double savedZi = zi;
+        int checkLength = 1;
+        int checkCount = 0;
         boolean outside = false;
         while (iterations < maxIterations && !outside) {
             double zr2 = zr * zr;
@@ -91,8 +577,26 @@ public class MandelbrotCalculator {
             zi = nzi;
             if ((zr2 + zi2) > radiusSquared)
                 outside = true;
+            else if (periodicityCheck) {
+                if (zr == savedZr && zi == savedZi) {
+                    zReal[x] = Double.NaN;
+                    return maxIterations;
+                }
+                if (++checkCount == checkLength) {
+                    checkCount = 0;
+                    checkLength *= 2;
+                    savedZr = zr;
+                    savedZi = zi;
+                }
+            }
             iterations++;
         }
+        if (!outside) {
+            zReal[x] = zr;
+            zImaginary[x] = zi;
+        } else if (iterations == maxIterations) {
+            zReal[x] = Double.POSITIVE_INFINITY;
+        }
         return iterations;
     }
 
@@ -111,7 +615,188 @@ public class MandelbrotCalculator {
      */
     public int[][] calcMandelbrotSet(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
         int[][] mandelbrotData = new int[yResolution][xResolution];
-        double realRange = maxReal - minReal;
+
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        boolean floats = useFloats(xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations);
+
+        if (renderMode == SUBDIVISION_RENDER) {
+            calcSubdivided(mandelbrotData, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+            if (verifySubdivision) {
+                int[][] bruteForceData = new int[yResolution][xResolution];
+                calcTiled(bruteForceData, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+                int mismatches = 0;
+                for (int y = 0; y < yResolution; y++) {
+                    for (int x = 0; x < xResolution; x++) {
+                        if (mandelbrotData[y][x] != bruteForceData[y][x])
+                            mismatches++;
+                    }
+                }
+                subdivisionMismatches = mismatches;
+                return bruteForceData;
+            }
+        } else if (renderMode == CACHED_TILE_RENDER) {
+            calcFromTileCache(mandelbrotData, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        } else {
+            calcTiled(mandelbrotData, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+        }
+        return mandelbrotData;
+    }
+
+    /**
+     * Method to put mandelbrotData together from the tiles of the tile cache, calculating only the tiles which are missing.
+     * The zoom level is the power of two nearest the pixel spacing; views too deep or too far from the origin for world pixel indices
+     * to be exact in a double are calculated with calcTiled instead.
+     */
+    private void calcFromTileCache(int[][] mandelbrotData, int xResolution, int yResolution, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared){
+        double spacing = Math.min(Math.abs(realStep), Math.abs(imaginaryStep));
+        double magnitude = Math.max(Math.max(Math.abs(minReal), Math.abs(minReal + xResolution * realStep)),
+                                    Math.max(Math.abs(minImaginary), Math.abs(minImaginary + yResolution * imaginaryStep)));
+        if (!(spacing > 0) || Double.isInfinite(magnitude) || magnitude / spacing > 1L << 50) {
+            calcTiled(mandelbrotData, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared,
+                      useFloats(xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations));
+            return;
+        }
+        // the level whose world pixels are nearest the pixel spacing, measured on a log scale
+        int level = Math.getExponent(spacing * Math.sqrt(2.0));
+        double worldStep = Math.scalb(1.0, level);
+
+        int size = TileCache.TILE_SIZE;
+        long[] columns = new long[xResolution];
+        long[] rows = new long[yResolution];
+        for (int x = 0; x < xResolution; x++)
+            columns[x] = Math.round((minReal + x * realStep) / worldStep);
+        for (int y = 0; y < yResolution; y++)
+            rows[y] = Math.round((minImaginary + y * imaginaryStep) / worldStep);
+        long tileX0 = Math.floorDiv(Math.min(columns[0], columns[xResolution - 1]), size);
+        long tileY0 = Math.floorDiv(Math.min(rows[0], rows[yResolution - 1]), size);
+        int tilesX = (int) (Math.floorDiv(Math.max(columns[0], columns[xResolution - 1]), size) - tileX0 + 1);
+        int tilesY = (int) (Math.floorDiv(Math.max(rows[0], rows[yResolution - 1]), size) - tileY0 + 1);
+
+        int[][][][] tiles = new int[tilesY][tilesX][][];
+        List<TileCache.Key> missing = new ArrayList<>();
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                TileCache.Key key = new TileCache.Key(level, tileX0 + tx, tileY0 + ty, maxIterations, radiusSquared, kernel, singlePrecision);
+                tiles[ty][tx] = tileCache.get(key);
+                if (tiles[ty][tx] == null)
+                    missing.add(key);
+            }
+        }
+        CachedTileTask task = new CachedTileTask(missing, 0, missing.size(), worldStep, maxIterations, radiusSquared);
+        ForkJoinPool pool = getRenderPool();
+        if (pool.getParallelism() > 1 && missing.size() > 1) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+        for (TileCache.Key key : missing) {
+            tiles[(int) (key.getTileY() - tileY0)][(int) (key.getTileX() - tileX0)] = task.getTile(key);
+        }
+
+        for (int y = 0; y < yResolution; y++) {
+            int[][][] tileRow = tiles[(int) (Math.floorDiv(rows[y], size) - tileY0)];
+            int inTileY = Math.floorMod(rows[y], size);
+            int[] row = mandelbrotData[y];
+            for (int x = 0; x < xResolution; x++) {
+                int[][] tile = tileRow[(int) (Math.floorDiv(columns[x], size) - tileX0)];
+                row[x] = tile[inTileY][Math.floorMod(columns[x], size)];
+            }
+        }
+    }
+
+    /**
+     * Method to calculate every pixel of mandelbrotData, tile by tile on the render pool.
+     */
+    private void calcTiled(int[][] mandelbrotData, int xResolution, int yResolution, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared, boolean floats){
+        // rows mirrored from another row are left out (null) while the others are calculated
+        int[] mirrorOf = findMirrorRows(yResolution, minImaginary, imaginaryStep);
+        for (int y = 0; y < yResolution; y++) {
+            if (mirrorOf[y] >= 0)
+                mandelbrotData[y] = null;
+        }
+        ForkJoinPool pool = getRenderPool();
+        if (pool.getParallelism() > 1) {
+            pool.invoke(new TileTask(mandelbrotData, 0, 0, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats));
+        } else {
+            calcTile(mandelbrotData, 0, 0, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+        }
+        for (int y = 0; y < yResolution; y++) {
+            if (mirrorOf[y] >= 0)
+                mandelbrotData[y] = mandelbrotData[mirrorOf[y]].clone();
+        }
+    }
+
+    /**
+     * Method which pairs up rows lying either side of the real axis whose imaginary components are exact negatives of each other.
+     * @return for each row, the row below the axis it can be copied from, or -1 if it has to be calculated.
+     */
+    private int[] findMirrorRows(int yResolution, double minImaginary, double imaginaryStep){
+        int[] mirrorOf = new int[yResolution];
+        Arrays.fill(mirrorOf, -1);
+        Map<Double, Integer> rowsBelowAxis = new HashMap<>();
+        for (int y = 0; y < yResolution; y++) {
+            double cImaginary = minImaginary + y * imaginaryStep;
+            if (cImaginary < 0)
+                rowsBelowAxis.put(cImaginary, y);
+        }
+        if (rowsBelowAxis.isEmpty())
+            return mirrorOf;
+        for (int y = 0; y < yResolution; y++) {
+            double cImaginary = minImaginary + y * imaginaryStep;
+            if (cImaginary > 0) {
+                Integer source = rowsBelowAxis.get(-cImaginary);
+                if (source != null)
+                    mirrorOf[y] = source;
+            }
+        }
+        return mirrorOf;
+    }
+
+    /**
+     * Method to fill mandelbrotData by Mariani-Silver subdivision: the border of the frame is calculated and then the frame is handed to a
+     * SubdivisionTask, on the render pool when it has more than one thread.
+     */
+    private void calcSubdivided(int[][] mandelbrotData, int xResolution, int yResolution, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared, boolean floats){
+        if (xResolution < MIN_SUBDIVISION_SIZE || yResolution < MIN_SUBDIVISION_SIZE) {
+            calcTile(mandelbrotData, 0, 0, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+            return;
+        }
+        int xLast = xResolution - 1;
+        int yLast = yResolution - 1;
+        calcTile(mandelbrotData, 0, 0, xResolution, 1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+        calcTile(mandelbrotData, 0, yLast, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+        calcColumn(mandelbrotData, 0, 1, yLast, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+        calcColumn(mandelbrotData, xLast, 1, yLast, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+
+        ForkJoinPool pool = getRenderPool();
+        boolean parallel = pool.getParallelism() > 1;
+        SubdivisionTask task = new SubdivisionTask(mandelbrotData, 0, 0, xLast, yLast, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats, parallel);
+        if (parallel) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+    }
+
+    /**
+     * Method to calculate the iteration values of the pixels at column x for y0 <= y < y1 into mandelbrotData, with the same kernel and
+     * precision as the rows.
+     */
+    private void calcColumn(int[][] mandelbrotData, int x, int y0, int y1, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared, boolean floats){
+        int[] column = new int[y1 - y0];
+        calcPixels(column, 0, y1 - y0, x, 0, y0, 1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+        for (int y = y0; y < y1; y++) {
+            mandelbrotData[y][x] = column[y - y0];
+        }
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set on the calling thread only, pixel by pixel.
+     * The parameters and result are the same as for calcMandelbrotSet, which this method may be used to check.
+     */
+    public int[][] calcMandelbrotSetSerial(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
+        int[][] mandelbrotData = new int[yResolution][xResolution];
 
         double realStep = (maxReal - minReal)/xResolution;
         double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
@@ -122,9 +807,711 @@ public class MandelbrotCalculator {
             for (int x = 0; x < xResolution; x++) {
                 double cReal = minReal + x * realStep;
                 mandelbrotData[y][x] = calcMandel(cReal, cImaginary, maxIterations, radiusSquared);
-                cReal = cReal + realStep;
             }
         }
         return mandelbrotData;
     }
+
+    /**
+     * Method to calculate only the pixels x0 <= x < x1, y0 <= y < y1 of a set, into an array which holds the rest of the set already.
+     * The tiles of the region are calculated on the render pool exactly as calcMandelbrotSet would calculate them.
+     * @param mandelbrotData the 2-D integer array [yResolution][xResolution] of the whole set, whose size gives the resolution.
+     * The other parameters are the same as for calcMandelbrotSet.
+     */
+    public void calcMandelbrotRegion(int[][] mandelbrotData, int x0, int y0, int x1, int y1, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
+        if (x0 >= x1 || y0 >= y1)
+            return;
+        double realStep = (maxReal - minReal)/mandelbrotData[0].length;
+        double imaginaryStep = (maxImaginary - minImaginary)/mandelbrotData.length;
+        // the precision of the whole frame, so the region matches a full render
+        boolean floats = useFloats(mandelbrotData[0].length, mandelbrotData.length, minReal, realStep, minImaginary, imaginaryStep, maxIterations);
+
+        ForkJoinPool pool = getRenderPool();
+        if (pool.getParallelism() > 1) {
+            pool.invoke(new TileTask(mandelbrotData, x0, y0, x1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats));
+        } else {
+            calcTile(mandelbrotData, x0, y0, x1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+        }
+    }
+
+    /**
+     * Method to carry on calculating a set to a higher maxIterations. Only the pixels of mandelbrotData equal to previousMaxIterations are iterated
+     * further, each starting from the value of Z saved for it after zIterations iterations; a zIterations of 0 with Z saved as 0 starts them afresh.
+     * The saved values are updated to the values reached after maxIterations, NaN for a C found never to escape, or +Infinity for a C
+     * which escaped on exactly maxIterations.
+     * @param mandelbrotData the 2-D integer array [yResolution][xResolution] of the set calculated to previousMaxIterations, updated in place.
+     * @param zReal the saved real components of Z, [yResolution][xResolution].
+     * @param zImaginary the saved imaginary components of Z, [yResolution][xResolution].
+     * @param zIterations the number of iterations which gave the saved values of Z.
+     * @param previousMaxIterations the maximum number of iterations mandelbrotData was calculated to.
+     * The other parameters are the same as for calcMandelbrotSet.
+     */
+    public void calcMandelbrotSetContinued(int[][] mandelbrotData, double[][] zReal, double[][] zImaginary, int zIterations, int previousMaxIterations, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
+        double realStep = (maxReal - minReal)/mandelbrotData[0].length;
+        double imaginaryStep = (maxImaginary - minImaginary)/mandelbrotData.length;
+        ContinueTask task = new ContinueTask(mandelbrotData, zReal, zImaginary, zIterations, previousMaxIterations, 0, mandelbrotData.length, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        ForkJoinPool pool = getRenderPool();
+        if (pool.getParallelism() > 1) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+    }
+
+    /**
+     * Method to calculate supersamples of chosen pixels of a set, for anti-aliasing. Each pixel is sampled on a factor by factor grid
+     * spread evenly over the pixel and centred on the point calcMandelbrotSet samples the pixel at. The pixels are shared out over the render pool.
+     * @param pixels the pixels to sample, each given as y * xResolution + x.
+     * @param factor the number of samples across and down each pixel.
+     * @param samples receives factor * factor iteration values per pixel, in the order of pixels, and row by row within each pixel.
+     * The other parameters are the same as for calcMandelbrotSet.
+     */
+    public void calcMandelbrotSupersamples(int[] pixels, int factor, int[] samples, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        SupersampleTask task = new SupersampleTask(pixels, 0, pixels.length, factor, samples, xResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        ForkJoinPool pool = getRenderPool();
+        if (pool.getParallelism() > 1) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set in passes of decreasing pixel stride. In the pass with stride s the pixels whose x and y
+     * are both multiples of s, and were not calculated by an earlier pass, are calculated and each fills the s by s block to its
+     * bottom right. After every pass but the last the partly refined set is given to passListener, which may show it.
+     * Every pass uses the kernel and precision of calcMandelbrotSet, and rows mirrored about the real axis are copied rather than
+     * calculated, so the final set is identical to the one calcMandelbrotSet gives. In SUBDIVISION_RENDER mode only the coarsest pass
+     * is calculated as a preview, and the frame is then subdivided by calcMandelbrotSet.
+     * The parameters other than passListener and the final result are the same as for calcMandelbrotSet.
+     * @param passListener receives the set after each coarse pass, on the calling thread.
+     */
+    public int[][] calcMandelbrotSetProgressive(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared, Consumer<int[][]> passListener){
+        // cached tiles are put together in one go
+        if (renderMode == CACHED_TILE_RENDER)
+            return calcMandelbrotSet(xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+
+        int[][] mandelbrotData = new int[yResolution][xResolution];
+
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        boolean floats = useFloats(xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations);
+        int[] mirrorOf = findMirrorRows(yResolution, minImaginary, imaginaryStep);
+
+        ForkJoinPool pool = getRenderPool();
+        int passes = renderMode == SUBDIVISION_RENDER ? 1 : PROGRESSIVE_STRIDES.length;
+        for (int pass = 0; pass < passes; pass++) {
+            int stride = PROGRESSIVE_STRIDES[pass];
+            int previousStride = pass == 0 ? 0 : PROGRESSIVE_STRIDES[pass - 1];
+            ProgressiveTask task = new ProgressiveTask(mandelbrotData, mirrorOf, 0, (yResolution + stride - 1) / stride, stride, previousStride, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+            if (pool.getParallelism() > 1) {
+                pool.invoke(task);
+            } else {
+                task.compute();
+            }
+            copyMirroredRows(mandelbrotData, mirrorOf, stride);
+            if (stride > 1)
+                passListener.accept(mandelbrotData);
+        }
+        if (renderMode == SUBDIVISION_RENDER)
+            return calcMandelbrotSet(xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+        return mandelbrotData;
+    }
+
+    /**
+     * Method which fills the blocks of the rows of a progressive pass with stride that ProgressiveTask left out because they mirror
+     * another row of the pass, from the pixels of that row.
+     */
+    private void copyMirroredRows(int[][] mandelbrotData, int[] mirrorOf, int stride){
+        int yResolution = mandelbrotData.length;
+        for (int y = 0; y < yResolution; y += stride) {
+            int source = mirrorOf[y];
+            if (source < 0 || source % stride != 0)
+                continue;
+            int yEnd = Math.min(y + stride, yResolution);
+            int[] sourceRow = mandelbrotData[source];
+            for (int x = 0; x < sourceRow.length; x += stride) {
+                int xEnd = Math.min(x + stride, sourceRow.length);
+                for (int by = y; by < yEnd; by++) {
+                    Arrays.fill(mandelbrotData[by], x, xEnd, sourceRow[x]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to calculate the iteration values of the pixels x0 <= x < x1, y0 <= y < y1 into mandelbrotData.
+     * Pixel coordinates are worked out exactly as in calcMandelbrotSetSerial so that the tiled result is identical.
+     * Rows which are null are skipped, as they will be mirrored from another row.
+     */
+    private void calcTile(int[][] mandelbrotData, int x0, int y0, int x1, int y1, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared, boolean floats){
+        for (int y = y0; y < y1; y++) {
+            int[] row = mandelbrotData[y];
+            if (row == null)
+                continue;
+            checkCancelled();
+            calcPixels(row, x0, x1 - x0, x0, 1, y, 0, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+        }
+    }
+
+    /**
+     * Method to calculate the iteration values of count pixels along a line, the k-th being pixel (x + k * dx, y + k * dy), into
+     * values[offset + k]. Rows, columns and the spaced pixels of a progressive pass all go through this method with the kernel of this
+     * calculator, so a pixel has the same value whichever way it is reached.
+     * @param floats true to calculate in single precision, as chosen for the whole frame by useFloats.
+     */
+    private void calcPixels(int[] values, int offset, int count, int x, int dx, int y, int dy, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared, boolean floats){
+        if (kernel != BATCHED_KERNEL) {
+            for (int k = 0; k < count; k++)
+                values[offset + k] = calcMandel(minReal + (x + k * dx) * realStep, minImaginary + (y + k * dy) * imaginaryStep, maxIterations, radiusSquared);
+            return;
+        }
+        if (floats) {
+            float[] cReal = new float[FLOAT_LANES];
+            float[] cImaginary = new float[FLOAT_LANES];
+            float[] zr = new float[FLOAT_LANES];
+            float[] zi = new float[FLOAT_LANES];
+            float[] savedZr = new float[FLOAT_LANES];
+            float[] savedZi = new float[FLOAT_LANES];
+            for (int k = 0; k < count; k += FLOAT_LANES) {
+                int lanes = Math.min(FLOAT_LANES, count - k);
+                for (int l = 0; l < FLOAT_LANES; l++) {
+                    // lanes past the last pixel repeat it, and are ignored
+                    int p = k + Math.min(l, lanes - 1);
+                    cReal[l] = (float) (minReal + (x + p * dx) * realStep);
+                    cImaginary[l] = (float) (minImaginary + (y + p * dy) * imaginaryStep);
+                }
+                calcMandelBatchFloat(values, offset + k, lanes, cReal, cImaginary, zr, zi, savedZr, savedZi, maxIterations, (float) radiusSquared);
+            }
+            return;
+        }
+        double[] cReal = new double[LANES];
+        double[] cImaginary = new double[LANES];
+        double[] zr = new double[LANES];
+        double[] zi = new double[LANES];
+        double[] savedZr = new double[LANES];
+        double[] savedZi = new double[LANES];
+        for (int k = 0; k < count; k += LANES) {
+            int lanes = Math.min(LANES, count - k);
+            for (int l = 0; l < LANES; l++) {
+                int p = k + Math.min(l, lanes - 1);
+                cReal[l] = minReal + (x + p * dx) * realStep;
+                cImaginary[l] = minImaginary + (y + p * dy) * imaginaryStep;
+            }
+            calcMandelBatch(values, offset + k, lanes, cReal, cImaginary, zr, zi, savedZr, savedZi, maxIterations, radiusSquared);
+        }
+    }
+
+    /**
+     * Method which does the work of calcMandel for LANES pixels at once.
+     * Every lane is iterated on each pass so the loop body has no branches per pixel; a bit mask records which lanes are still inside the radius,
+     * and a lane's iteration count is written when it first escapes. The arithmetic is the same as calcMandel, so the counts are bit-identical.
+     *
+     * @param values the iteration values to write into.
+     * @param offset the index in values of the first lane.
+     * @param lanes the number of lanes to write, at most LANES; any lanes beyond this are iterated but ignored.
+     * @param cReal the real components of C for each lane.
+     * @param cImaginary the imaginary components of C for each lane.
+     * @param zr scratch space of LANES doubles for the real components of Z.
+     * @param zi scratch space of LANES doubles for the imaginary components of Z.
+     * @param savedZr scratch space of LANES doubles for the real components of the values of Z kept for the cycle check.
+     * @param savedZi scratch space of LANES doubles for the imaginary components of the values of Z kept for the cycle check.
+     * @param maxIterations the maximum number of iterations over which to iterate the equation until assuming Z will remain bounded.
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     */
+    private void calcMandelBatch(int[] values, int offset, int lanes, double[] cReal, double[] cImaginary, double[] zr, double[] zi, double[] savedZr, double[] savedZi, int maxIterations, double radiusSquared){
+        int limit = Math.max(maxIterations, 0);
+        for (int l = 0; l < LANES; l++) {
+            zr[l] = 0;
+            zi[l] = 0;
+            savedZr[l] = 0;
+            savedZi[l] = 0;
+        }
+        int active = 0;
+        for (int l = 0; l < lanes; l++) {
+            values[offset + l] = limit;
+            if (!isInterior(cReal[l], cImaginary[l], radiusSquared))
+                active |= 1 << l;
+        }
+        int checkLength = 1;
+        int checkCount = 0;
+        for (int iterations = 1; iterations <= maxIterations && active != 0; iterations++) {
+            int escaped = 0;
+            for (int l = 0; l < LANES; l++) {
+                double zr2 = zr[l] * zr[l];
+                double zi2 = zi[l] * zi[l];
+                double nzi = 2 * zr[l] * zi[l] + cImaginary[l];
+                zr[l] = zr2 - zi2 + cReal[l];
+                zi[l] = nzi;
+                if ((zr2 + zi2) > radiusSquared)
+                    escaped |= 1 << l;
+            }
+            escaped &= active;
+            active &= ~escaped;
+            while (escaped != 0) {
+                values[offset + Integer.numberOfTrailingZeros(escaped)] = iterations;
+                escaped &= escaped - 1;
+            }
+            if (periodicityCheck) {
+                // lanes whose orbit returned to its saved value keep maxIterations, as in calcMandel
+                for (int l = 0; l < LANES; l++) {
+                    if (zr[l] == savedZr[l] && zi[l] == savedZi[l])
+                        active &= ~(1 << l);
+                }
+                if (++checkCount == checkLength) {
+                    checkCount = 0;
+                    checkLength *= 2;
+                    System.arraycopy(zr, 0, savedZr, 0, LANES);
+                    System.arraycopy(zi, 0, savedZi, 0, LANES);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method which tells whether calcMandelbrotSet calculates a view in single precision, as only sets calculated in the same precision
+     * can share pixels. The parameters are the same as for calcMandelbrotSet.
+     * @return true if the view is calculated with floats.
+     */
+    boolean usesSinglePrecision(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations){
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        return useFloats(xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations);
+    }
+
+    /**
+     * Method which decides once for a whole frame of xResolution by yResolution pixels whether it is calculated in single precision.
+     * @return true if the batched kernel should use floats for every pixel of the frame.
+     */
+    private boolean useFloats(int xResolution, int yResolution, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations){
+        return kernel == BATCHED_KERNEL && isFloatSafe(0, 0, xResolution, yResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations);
+    }
+
+    /**
+     * Method which tests whether floats can tell apart the pixels of the tile x0 <= x < x1, y0 <= y < y1 with enough room for rounding.
+     * @return true if the tile may be calculated with calcMandelBatchFloat.
+     */
+    private boolean isFloatSafe(int x0, int y0, int x1, int y1, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations){
+        if (!singlePrecision || maxIterations > FLOAT_MAX_ITERATIONS)
+            return false;
+        double magnitude = Math.max(Math.max(Math.abs(minReal + x0 * realStep), Math.abs(minReal + x1 * realStep)),
+                                    Math.max(Math.abs(minImaginary + y0 * imaginaryStep), Math.abs(minImaginary + y1 * imaginaryStep)));
+        double spacing = Math.min(Math.abs(realStep), Math.abs(imaginaryStep));
+        return spacing >= FLOAT_SPACING * magnitude;
+    }
+
+    /**
+     * Method which does the work of calcMandelBatch in single precision for FLOAT_LANES pixels.
+     * The parameters are as for calcMandelBatch with floats in place of doubles.
+     */
+    private void calcMandelBatchFloat(int[] values, int offset, int lanes, float[] cReal, float[] cImaginary, float[] zr, float[] zi, float[] savedZr, float[] savedZi, int maxIterations, float radiusSquared){
+        int limit = Math.max(maxIterations, 0);
+        for (int l = 0; l < FLOAT_LANES; l++) {
+            zr[l] = 0;
+            zi[l] = 0;
+            savedZr[l] = 0;
+            savedZi[l] = 0;
+        }
+        int active = 0;
+        for (int l = 0; l < lanes; l++) {
+            values[offset + l] = limit;
+            if (!isInterior(cReal[l], cImaginary[l], radiusSquared))
+                active |= 1 << l;
+        }
+        int checkLength = 1;
+        int checkCount = 0;
+        for (int iterations = 1; iterations <= maxIterations && active != 0; iterations++) {
+            int escaped = 0;
+            for (int l = 0; l < FLOAT_LANES; l++) {
+                float zr2 = zr[l] * zr[l];
+                float zi2 = zi[l] * zi[l];
+                float nzi = 2 * zr[l] * zi[l] + cImaginary[l];
+                zr[l] = zr2 - zi2 + cReal[l];
+                zi[l] = nzi;
+                if ((zr2 + zi2) > radiusSquared)
+                    escaped |= 1 << l;
+            }
+            escaped &= active;
+            active &= ~escaped;
+            while (escaped != 0) {
+                values[offset + Integer.numberOfTrailingZeros(escaped)] = iterations;
+                escaped &= escaped - 1;
+            }
+            if (periodicityCheck) {
+                for (int l = 0; l < FLOAT_LANES; l++) {
+                    if (zr[l] == savedZr[l] && zi[l] == savedZi[l])
+                        active &= ~(1 << l);
+                }
+                if (++checkCount == checkLength) {
+                    checkCount = 0;
+                    checkLength *= 2;
+                    System.arraycopy(zr, 0, savedZr, 0, FLOAT_LANES);
+                    System.arraycopy(zi, 0, savedZi, 0, FLOAT_LANES);
+                }
+            }
+        }
+    }
+
+    /**
+     * A fork-join task which splits its rectangle of pixels in half along its longer side until it is no bigger than a tile, then calculates the tile.
+     */
+    private class TileTask extends RecursiveAction {
+        private final int[][] mandelbrotData;
+        private final int x0, y0, x1, y1;
+        private final double minReal, realStep, minImaginary, imaginaryStep;
+        private final int maxIterations;
+        private final double radiusSquared;
+        private final boolean floats;
+
+        TileTask(int[][] mandelbrotData, int x0, int y0, int x1, int y1, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared, boolean floats) {
+            this.mandelbrotData = mandelbrotData;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.minReal = minReal;
+            this.realStep = realStep;
+            this.minImaginary = minImaginary;
+            this.imaginaryStep = imaginaryStep;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+            this.floats = floats;
+        }
+
+        @Override
+        protected void compute() {
+            int width = x1 - x0;
+            int height = y1 - y0;
+            int size = tileSize;
+            if (width <= size && height <= size) {
+                calcTile(mandelbrotData, x0, y0, x1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+            } else if (width >= height) {
+                int mid = x0 + width / 2;
+                invokeAll(new TileTask(mandelbrotData, x0, y0, mid, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats),
+                          new TileTask(mandelbrotData, mid, y0, x1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats));
+            } else {
+                int mid = y0 + height / 2;
+                invokeAll(new TileTask(mandelbrotData, x0, y0, x1, mid, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats),
+                          new TileTask(mandelbrotData, x0, mid, x1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats));
+            }
+        }
+    }
+
+    /**
+     * A fork-join task for the rectangle x0 <= x <= x1, y0 <= y <= y1 whose border pixels have already been calculated.
+     * If the whole border has one iteration value the inside is filled with it; small rectangles are calculated; otherwise the rectangle is
+     * split along its longer side, the dividing line is calculated and each half becomes a new task.
+     */
+    private class SubdivisionTask extends RecursiveAction {
+        private final int[][] mandelbrotData;
+        private final int x0, y0, x1, y1;
+        private final double minReal, realStep, minImaginary, imaginaryStep;
+        private final int maxIterations;
+        private final double radiusSquared;
+        private final boolean floats;
+        private final boolean parallel;
+
+        SubdivisionTask(int[][] mandelbrotData, int x0, int y0, int x1, int y1, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared, boolean floats, boolean parallel) {
+            this.mandelbrotData = mandelbrotData;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.minReal = minReal;
+            this.realStep = realStep;
+            this.minImaginary = minImaginary;
+            this.imaginaryStep = imaginaryStep;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+            this.floats = floats;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected void compute() {
+            checkCancelled();
+            if (x1 - x0 < 2 || y1 - y0 < 2) {
+                // no pixels inside the border
+                return;
+            }
+            int value = mandelbrotData[y0][x0];
+            if (isUniformBorder(value)) {
+                for (int y = y0 + 1; y < y1; y++) {
+                    Arrays.fill(mandelbrotData[y], x0 + 1, x1, value);
+                }
+                return;
+            }
+            if (x1 - x0 <= MIN_SUBDIVISION_SIZE || y1 - y0 <= MIN_SUBDIVISION_SIZE) {
+                calcTile(mandelbrotData, x0 + 1, y0 + 1, x1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+                return;
+            }
+            SubdivisionTask first, second;
+            if (x1 - x0 >= y1 - y0) {
+                int mid = (x0 + x1) / 2;
+                calcColumn(mandelbrotData, mid, y0 + 1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+                first = new SubdivisionTask(mandelbrotData, x0, y0, mid, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats, parallel);
+                second = new SubdivisionTask(mandelbrotData, mid, y0, x1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats, parallel);
+            } else {
+                int mid = (y0 + y1) / 2;
+                calcTile(mandelbrotData, x0 + 1, mid, x1, mid + 1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+                first = new SubdivisionTask(mandelbrotData, x0, y0, x1, mid, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats, parallel);
+                second = new SubdivisionTask(mandelbrotData, x0, mid, x1, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats, parallel);
+            }
+            if (parallel) {
+                invokeAll(first, second);
+            } else {
+                first.compute();
+                second.compute();
+            }
+        }
+
+        /**
+         * Returns true if every pixel on the border of this rectangle has the given iteration value.
+         */
+        private boolean isUniformBorder(int value) {
+            int[] top = mandelbrotData[y0];
+            int[] bottom = mandelbrotData[y1];
+            for (int x = x0; x <= x1; x++) {
+                if (top[x] != value || bottom[x] != value)
+                    return false;
+            }
+            for (int y = y0 + 1; y < y1; y++) {
+                if (mandelbrotData[y][x0] != value || mandelbrotData[y][x1] != value)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A fork-join task for one pass of a progressive render, covering the rows stride * i for i0 <= i < i1.
+     * Pixels already calculated by the pass with stride previousStride (0 for the first pass), which is twice stride, are kept.
+     * Rows mirroring another row of the pass are left for copyMirroredRows.
+     */
+    private class ProgressiveTask extends RecursiveAction {
+        private final int[][] mandelbrotData;
+        private final int[] mirrorOf;
+        private final int i0, i1, stride, previousStride;
+        private final double minReal, realStep, minImaginary, imaginaryStep;
+        private final int maxIterations;
+        private final double radiusSquared;
+        private final boolean floats;
+
+        ProgressiveTask(int[][] mandelbrotData, int[] mirrorOf, int i0, int i1, int stride, int previousStride, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared, boolean floats) {
+            this.mandelbrotData = mandelbrotData;
+            this.mirrorOf = mirrorOf;
+            this.i0 = i0;
+            this.i1 = i1;
+            this.stride = stride;
+            this.previousStride = previousStride;
+            this.minReal = minReal;
+            this.realStep = realStep;
+            this.minImaginary = minImaginary;
+            this.imaginaryStep = imaginaryStep;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+            this.floats = floats;
+        }
+
+        @Override
+        protected void compute() {
+            // rows are only split when running on the render pool
+            if (i1 - i0 > 1 && (i1 - i0) * stride > tileSize && inForkJoinPool()) {
+                int mid = (i0 + i1) / 2;
+                invokeAll(new ProgressiveTask(mandelbrotData, mirrorOf, i0, mid, stride, previousStride, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats),
+                          new ProgressiveTask(mandelbrotData, mirrorOf, mid, i1, stride, previousStride, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats));
+                return;
+            }
+            int yResolution = mandelbrotData.length;
+            int xResolution = mandelbrotData[0].length;
+            for (int i = i0; i < i1; i++) {
+                int y = i * stride;
+                if (mirrorOf[y] >= 0 && mirrorOf[y] % stride == 0)
+                    continue;
+                checkCancelled();
+                int yEnd = Math.min(y + stride, yResolution);
+                // a row of the previous pass only needs the pixels between the ones it already has
+                boolean oldRow = previousStride > 0 && y % previousStride == 0;
+                int x0 = oldRow ? stride : 0;
+                int dx = oldRow ? previousStride : stride;
+                if (x0 >= xResolution)
+                    continue;
+                int[] values = new int[(xResolution - x0 + dx - 1) / dx];
+                calcPixels(values, 0, values.length, x0, dx, y, 0, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared, floats);
+                for (int k = 0; k < values.length; k++) {
+                    int x = x0 + k * dx;
+                    int xEnd = Math.min(x + stride, xResolution);
+                    for (int by = y; by < yEnd; by++) {
+                        Arrays.fill(mandelbrotData[by], x, xEnd, values[k]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A fork-join task which carries on the iteration of the pixels that reached previousMaxIterations in the rows y0 <= y < y1.
+     */
+    private class ContinueTask extends RecursiveAction {
+        private final int[][] mandelbrotData;
+        private final double[][] zReal, zImaginary;
+        private final int zIterations, previousMaxIterations;
+        private final int y0, y1;
+        private final double minReal, realStep, minImaginary, imaginaryStep;
+        private final int maxIterations;
+        private final double radiusSquared;
+
+        ContinueTask(int[][] mandelbrotData, double[][] zReal, double[][] zImaginary, int zIterations, int previousMaxIterations, int y0, int y1, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+            this.mandelbrotData = mandelbrotData;
+            this.zReal = zReal;
+            this.zImaginary = zImaginary;
+            this.zIterations = zIterations;
+            this.previousMaxIterations = previousMaxIterations;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.minReal = minReal;
+            this.realStep = realStep;
+            this.minImaginary = minImaginary;
+            this.imaginaryStep = imaginaryStep;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+        }
+
+        @Override
+        protected void compute() {
+            // rows are only split when running on the render pool
+            if (y1 - y0 > 1 && inForkJoinPool()) {
+                int mid = (y0 + y1) / 2;
+                invokeAll(new ContinueTask(mandelbrotData, zReal, zImaginary, zIterations, previousMaxIterations, y0, mid, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared),
+                          new ContinueTask(mandelbrotData, zReal, zImaginary, zIterations, previousMaxIterations, mid, y1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared));
+                return;
+            }
+            for (int y = y0; y < y1; y++) {
+                checkCancelled();
+                double cImaginary = minImaginary + y * imaginaryStep;
+                int[] row = mandelbrotData[y];
+                for (int x = 0; x < row.length; x++) {
+                    if (row[x] == previousMaxIterations)
+                        row[x] = calcMandelContinued(minReal + x * realStep, cImaginary, zReal[y], zImaginary[y], x, zIterations, maxIterations, radiusSquared);
+                }
+            }
+        }
+    }
+
+    /**
+     * A fork-join task which calculates the supersamples of pixels[k0] to pixels[k1 - 1], splitting the pixels in half while there are many.
+     */
+    private class SupersampleTask extends RecursiveAction {
+        // The number of pixels below which the pixels are no longer split
+        private static final int MIN_PIXELS = 64;
+
+        private final int[] pixels;
+        private final int k0, k1;
+        private final int factor;
+        private final int[] samples;
+        private final int xResolution;
+        private final double minReal, realStep, minImaginary, imaginaryStep;
+        private final int maxIterations;
+        private final double radiusSquared;
+
+        SupersampleTask(int[] pixels, int k0, int k1, int factor, int[] samples, int xResolution, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+            this.pixels = pixels;
+            this.k0 = k0;
+            this.k1 = k1;
+            this.factor = factor;
+            this.samples = samples;
+            this.xResolution = xResolution;
+            this.minReal = minReal;
+            this.realStep = realStep;
+            this.minImaginary = minImaginary;
+            this.imaginaryStep = imaginaryStep;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+        }
+
+        @Override
+        protected void compute() {
+            if (k1 - k0 > MIN_PIXELS && inForkJoinPool()) {
+                int mid = (k0 + k1) / 2;
+                invokeAll(new SupersampleTask(pixels, k0, mid, factor, samples, xResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared),
+                          new SupersampleTask(pixels, mid, k1, factor, samples, xResolution, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared));
+                return;
+            }
+            // the sub-pixel offsets of the samples, from -0.5 to 0.5 of a pixel
+            double[] offsets = new double[factor];
+            for (int s = 0; s < factor; s++)
+                offsets[s] = (s + 0.5) / factor - 0.5;
+            for (int k = k0; k < k1; k++) {
+                if ((k - k0) % MIN_PIXELS == 0)
+                    checkCancelled();
+                int x = pixels[k] % xResolution;
+                int y = pixels[k] / xResolution;
+                int sample = k * factor * factor;
+                for (int sy = 0; sy < factor; sy++) {
+                    double cImaginary = minImaginary + (y + offsets[sy]) * imaginaryStep;
+                    for (int sx = 0; sx < factor; sx++)
+                        samples[sample++] = calcMandel(minReal + (x + offsets[sx]) * realStep, cImaginary, maxIterations, radiusSquared);
+                }
+            }
+        }
+    }
+
+    /**
+     * A fork-join task which calculates the missing tiles keys[k0] to keys[k1 - 1] of the tile cache and adds them to it.
+     * The tiles calculated by all the tasks split from one task are kept in a map shared between them.
+     */
+    private class CachedTileTask extends RecursiveAction {
+        private final List<TileCache.Key> keys;
+        private final int k0, k1;
+        private final double worldStep;
+        private final int maxIterations;
+        private final double radiusSquared;
+        private final Map<TileCache.Key, int[][]> calculated;
+
+        CachedTileTask(List<TileCache.Key> keys, int k0, int k1, double worldStep, int maxIterations, double radiusSquared) {
+            this(keys, k0, k1, worldStep, maxIterations, radiusSquared, new ConcurrentHashMap<>());
+        }
+
+        private CachedTileTask(List<TileCache.Key> keys, int k0, int k1, double worldStep, int maxIterations, double radiusSquared, Map<TileCache.Key, int[][]> calculated) {
+            this.keys = keys;
+            this.k0 = k0;
+            this.k1 = k1;
+            this.worldStep = worldStep;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+            this.calculated = calculated;
+        }
+
+        /**
+         * Returns a tile calculated by this task or the tasks split from it.
+         */
+        int[][] getTile(TileCache.Key key) {
+            return calculated.get(key);
+        }
+
+        @Override
+        protected void compute() {
+            // tiles are only split between tasks when running on the render pool
+            if (k1 - k0 > 1 && inForkJoinPool()) {
+                int mid = (k0 + k1) / 2;
+                invokeAll(new CachedTileTask(keys, k0, mid, worldStep, maxIterations, radiusSquared, calculated),
+                          new CachedTileTask(keys, mid, k1, worldStep, maxIterations, radiusSquared, calculated));
+                return;
+            }
+            int size = TileCache.TILE_SIZE;
+            for (int k = k0; k < k1; k++) {
+                TileCache.Key key = keys.get(k);
+                int[][] tile = new int[size][size];
+                // the corner of the tile is a whole number of world pixels, so every world pixel is exact
+                double tileReal = key.getTileX() * size * worldStep;
+                double tileImaginary = key.getTileY() * size * worldStep;
+                calcTile(tile, 0, 0, size, size, tileReal, worldStep, tileImaginary, worldStep, maxIterations, radiusSquared,
+                         useFloats(size, size, tileReal, worldStep, tileImaginary, worldStep, maxIterations));
+                tileCache.put(key, tile);
+                calculated.put(key, tile);
+            }
+        }
+    }
 }
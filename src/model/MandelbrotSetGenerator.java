@@ -4,8 +4,23 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 
 import java.lang.Math;
+import java.math.BigDecimal;
+import java.math.MathContext;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
 /**
  * This is a Mandelbrot Set generator class which makes it possible for users
@@ -26,6 +41,26 @@ import java.util.Stack;
  * The class supports change listeners to be notified when to change.
  * This form of loose coupling permits the Delegate (View) to be updated when
  * the model has changed.
+ * Every change returns a CompletableFuture of the new set. In asynchronous
+ * mode the state stacks change straight away but the set is rendered on a
+ * dedicated thread, so the caller (typically the Swing event thread) never
+ * waits. A change supersedes any render still in progress, which is
+ * cancelled between rows or tiles; only the latest change's set is kept and
+ * announced to observers.
+ * In progressive mode, observers are also sent a "partialMandelbrotSet"
+ * event carrying the partly refined set after each coarse render pass, so a
+ * preview can be shown long before the whole set is calculated. A zoom in
+ * is first sent as a "partialMandelbrotSet" event holding the previous set
+ * enlarged, whichever the mode.
+ * In auto iterations mode, views moved to are given the maximum iterations
+ * their zoom depth and the escape counts of the last rendered set call for.
+ * In speculative mode, the views the user is likely to move to next (undo,
+ * redo, a pan by a quarter of the view each way and a zoom out) are
+ * rendered on low priority threads of their own while the user looks at
+ * the set, so they never hold up the render pool, and kept in a cache of
+ * their own. Any change cancels the speculation at once.
+ * The speculations used are counted by kind and logged, at FINE level, so
+ * that the choice of views can be tuned.
  *
  * @author 170018405
  * @version 0.1
@@ -33,6 +68,38 @@ import java.util.Stack;
 
 public class MandelbrotSetGenerator
 {
+	/**
+	 * The default number of bytes of rendered sets kept for revisited views.
+	 */
+	public static final long DEFAULT_CACHE_BUDGET = 64L * 1024 * 1024;
+
+	/**
+	 * The default number of bytes of speculatively rendered sets kept.
+	 */
+	public static final long DEFAULT_SPECULATION_BUDGET = 32L * 1024 * 1024;
+
+	/**
+	 * The fraction of the view a speculative pan moves by.
+	 */
+	private static final double SPECULATIVE_PAN = 0.25;
+
+	/**
+	 * The pool speculative renders calculate their tiles on: half the
+	 * processors, on low priority threads, so that a speculation never
+	 * takes the render pool from a render the user is waiting for.
+	 */
+	private static final ForkJoinPool SPECULATION_POOL = new ForkJoinPool(
+	Math.max(1, Runtime.getRuntime().availableProcessors() / 2), pool ->
+	{
+		ForkJoinWorkerThread thread =
+		ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	}, null, false);
+
+	private static final Logger LOGGER = Logger.getLogger(
+	MandelbrotSetGenerator.class.getName());
+
 	/**
 	 * Stack to keep track of previous states.
 	 */
@@ -53,7 +120,85 @@ public class MandelbrotSetGenerator
 	 * 2D int array containing the Mandelbrot Set of the current
 	 * MandelbrotState Object.
 	 */
-	private int[][] mandelbrotSet;
+	private volatile int[][] mandelbrotSet;
+
+	/**
+	 * Whether sets are rendered coarse-to-fine with intermediate events.
+	 */
+	private boolean progressive;
+
+	/**
+	 * Whether the maximum iterations of each new view are chosen by the
+	 * IterationTuner.
+	 */
+	private boolean autoIterations;
+
+	/**
+	 * Whether sets are rendered on renderExecutor rather than the caller's
+	 * thread.
+	 */
+	private boolean asynchronous;
+
+	/**
+	 * The single thread asynchronous renders run on, one at a time.
+	 */
+	private ExecutorService renderExecutor;
+
+	/**
+	 * The cancel flag of the latest render, set to true once it is
+	 * superseded.
+	 */
+	private AtomicBoolean currentRender;
+
+	/**
+	 * The last fully rendered set and its MandelbrotState, which later
+	 * renders reuse pixels from where their views overlap.
+	 */
+	private int[][] renderedSet;
+	private MandelbrotState renderedState;
+
+	/**
+	 * The values of Z of the pixels of renderedSet which had not escaped, if
+	 * it was rendered by raising the maximum iterations, or null.
+	 */
+	private OrbitBuffer renderedOrbits;
+
+	/**
+	 * Recently rendered sets, so that undo, redo and reset back to a
+	 * recently visited view need no rendering.
+	 */
+	private RenderCache renderCache;
+
+	/**
+	 * Whether likely next views are rendered while the user is idle.
+	 */
+	private boolean speculative;
+
+	/**
+	 * The single low priority thread speculative renders run on.
+	 */
+	private ExecutorService speculationExecutor;
+
+	/**
+	 * The cancel flag of the latest speculation and the task running it.
+	 */
+	private AtomicBoolean currentSpeculation;
+	private Future<?> speculationTask;
+
+	/**
+	 * Speculatively rendered sets, apart from renderCache so that
+	 * speculations which are never used do not push out visited views.
+	 */
+	private RenderCache speculationCache;
+
+	/**
+	 * The kind of speculation ("undo", "redo", "pan" or "zoom out") of each
+	 * state in speculationCache, and the number of each kind rendered and
+	 * used. All are guarded by this.
+	 */
+	private Map<MandelbrotState, String> speculations;
+	private Map<String, Integer> speculationsRendered;
+	private Map<String, Integer> speculationsUsed;
 
 	/**
 	 * The property change support object to use when notifying listeners of
@@ -75,8 +220,31 @@ public class MandelbrotSetGenerator
 		nextStates = new Stack<>();
 		prevStates = new Stack<>();
 		mandelbrotSet = mbs.getMandelbrotSet();
+		renderedSet = mandelbrotSet;
+		renderedState = mbs;
+		renderCache = new RenderCache(DEFAULT_CACHE_BUDGET);
+		renderCache.put(mbs, mandelbrotSet);
 		prevStates.push(mbs);
 		notifier = new PropertyChangeSupport(this);
+		renderExecutor = Executors.newSingleThreadExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "Mandelbrot render");
+			// a render in progress should not keep the program open
+			thread.setDaemon(true);
+			return thread;
+		});
+		speculationCache = new RenderCache(DEFAULT_SPECULATION_BUDGET);
+		speculations = new HashMap<>();
+		speculationsRendered = new TreeMap<>();
+		speculationsUsed = new TreeMap<>();
+		speculationExecutor = Executors.newSingleThreadExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "Mandelbrot speculation");
+			thread.setDaemon(true);
+			// speculation only uses time nothing else wants
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
 	}
 
 	/**
@@ -88,6 +256,203 @@ public class MandelbrotSetGenerator
 	public void addObserver(PropertyChangeListener listener)
 	{
 		notifier.addPropertyChangeListener("mandelbrotSet", listener);
+		notifier.addPropertyChangeListener("partialMandelbrotSet", listener);
+	}
+
+	/**
+	 * Returns whether sets are rendered coarse-to-fine.
+	 *
+	 * @return true if observers are sent the partly refined sets
+	 */
+	public boolean getProgressive()
+	{
+		return progressive;
+	}
+
+	/**
+	 * Sets whether sets are rendered coarse-to-fine, sending observers a
+	 * "partialMandelbrotSet" event with the partly refined set after each
+	 * coarse pass.
+	 *
+	 * @param progressive true to render coarse-to-fine
+	 */
+	public void setProgressive(boolean progressive)
+	{
+		this.progressive = progressive;
+	}
+
+	/**
+	 * Returns whether sets are rendered asynchronously.
+	 *
+	 * @return true if changes return before their set is rendered
+	 */
+	public boolean getAsynchronous()
+	{
+		return asynchronous;
+	}
+
+	/**
+	 * Sets whether sets are rendered asynchronously on a dedicated thread.
+	 * When true, getSet keeps returning the previous set until the new one is
+	 * ready and observers are notified from the render thread.
+	 *
+	 * @param asynchronous true to render asynchronously
+	 */
+	public void setAsynchronous(boolean asynchronous)
+	{
+		this.asynchronous = asynchronous;
+	}
+
+	/**
+	 * Returns whether the maximum iterations are chosen automatically.
+	 *
+	 * @return true if new views are given the iterations they need
+	 */
+	public boolean getAutoIterations()
+	{
+		return autoIterations;
+	}
+
+	/**
+	 * Sets whether the maximum iterations of each view moved to by
+	 * setBounds, shiftBounds or renderBetween are chosen automatically, from
+	 * its zoom depth and from how many pixels of the last rendered set
+	 * escaped close to its maximum. Setting the maximum iterations by hand
+	 * still works, until the next such move.
+	 *
+	 * @param autoIterations true to choose the iterations automatically
+	 */
+	public void setAutoIterations(boolean autoIterations)
+	{
+		this.autoIterations = autoIterations;
+	}
+
+	/**
+	 * Returns the most bytes of rendered sets kept for revisited views.
+	 *
+	 * @return the cache budget in bytes
+	 */
+	public long getCacheBudget()
+	{
+		return renderCache.getBudget();
+	}
+
+	/**
+	 * Sets the most bytes of rendered sets kept for revisited views, the
+	 * least recently used being dropped first. A budget of 0 turns the cache
+	 * off.
+	 *
+	 * @param budget the cache budget in bytes
+	 * @throws IllegalArgumentException if budget is negative
+	 */
+	public void setCacheBudget(long budget) throws IllegalArgumentException
+	{
+		renderCache.setBudget(budget);
+	}
+
+	/**
+	 * Returns the number of renders whose set was found in the cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public long getCacheHits()
+	{
+		return renderCache.getHits();
+	}
+
+	/**
+	 * Returns the number of renders whose set was not found in the cache.
+	 *
+	 * @return the number of cache misses
+	 */
+	public long getCacheMisses()
+	{
+		return renderCache.getMisses();
+	}
+
+	/**
+	 * Returns whether likely next views are rendered while the user is idle.
+	 *
+	 * @return true if views are rendered speculatively
+	 */
+	public boolean getSpeculative()
+	{
+		return speculative;
+	}
+
+	/**
+	 * Sets whether likely next views are rendered after each change, on a
+	 * low priority thread, so that moving to one of them needs no rendering.
+	 * Turning speculation off cancels any speculation in progress.
+	 *
+	 * @param speculative true to render views speculatively
+	 */
+	public void setSpeculative(boolean speculative)
+	{
+		this.speculative = speculative;
+		if (!speculative) cancelSpeculation();
+	}
+
+	/**
+	 * Returns whether a speculation is queued or in progress.
+	 *
+	 * @return true until the latest speculation has finished or been
+	 * cancelled
+	 */
+	public synchronized boolean isSpeculating()
+	{
+		return speculationTask != null && !speculationTask.isDone();
+	}
+
+	/**
+	 * Returns the number of views rendered speculatively.
+	 *
+	 * @return the number of speculations rendered
+	 */
+	public synchronized int getSpeculationsRendered()
+	{
+		return sum(speculationsRendered);
+	}
+
+	/**
+	 * Returns the number of speculatively rendered views later moved to.
+	 *
+	 * @return the number of speculations used
+	 */
+	public synchronized int getSpeculationsUsed()
+	{
+		return sum(speculationsUsed);
+	}
+
+	/**
+	 * Returns how many speculations of each kind were rendered and used, for
+	 * example "pan 1/8, undo 2/2".
+	 *
+	 * @return the speculations used out of those rendered, by kind
+	 */
+	public synchronized String getSpeculationReport()
+	{
+		String report = "";
+		for (Map.Entry<String, Integer> kind : speculationsRendered.entrySet())
+		{
+			if (!report.isEmpty()) report += ", ";
+			report += kind.getKey() + " " + speculationsUsed.getOrDefault(
+			kind.getKey(), 0) + "/" + kind.getValue();
+		}
+		return report;
+	}
+
+	/**
+	 * Returns the sum of the counts of every kind of speculation.
+	 */
+	private static int sum(Map<String, Integer> counts)
+	{
+		int total = 0;
+		for (int count : counts.values())
+		{
+			total += count;
+		}
+		return total;
 	}
 
 	/**
@@ -117,12 +482,12 @@ public class MandelbrotSetGenerator
 	 * Note: this will empty the nextStates stack.
 	 *
 	 * @param state the MandelbrotState Object who's state will be copied
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void setState(MandelbrotState state)
+	public CompletableFuture<int[][]> setState(MandelbrotState state)
 	{
-		updateMandelbrotSet(state);
-		prevStates.push(state);
-		nextStates.removeAllElements();
+		return changeState(state);
 	}
 
 	/**
@@ -133,9 +498,8 @@ public class MandelbrotSetGenerator
 	public int getMagnification()
 	{
 		// the magnification is calculates as 1 / area
-		double area = Math.abs(getState().getMaxReal() -
-		getState().getMinReal()) * Math.abs(getState().getMaximaginary() -
-		getState().getMinimaginary());
+		double area = Math.abs(getState().getRealSpan().doubleValue()) *
+		Math.abs(getState().getImaginarySpan().doubleValue());
 		return (int) (1 / area);
 	}
 
@@ -150,18 +514,18 @@ public class MandelbrotSetGenerator
  	 * @param maxReal the upper real bound for the complex constant C
  	 * @param minImaginary the lower imaginary bound for the complex constant C
  	 * @param maxImaginary the upper imaginary bound for the complex constant C
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void setBounds(double minReal, double maxReal,
-	double minImaginary, double maxImaginary)
+	public CompletableFuture<int[][]> setBounds(double minReal,
+	double maxReal, double minImaginary, double maxImaginary)
 	{
 		MandelbrotState mbs = new MandelbrotState(prevStates.peek());
 		mbs.setMinReal(minReal);
 		mbs.setMaxReal(maxReal);
 		mbs.setMinimaginary(minImaginary);
 		mbs.setMaximaginary(maxImaginary);
-		updateMandelbrotSet(mbs);
-		prevStates.push(mbs);
-		nextStates.removeAllElements();
+		return changeView(mbs);
 	}
 
 	/**
@@ -180,33 +544,50 @@ public class MandelbrotSetGenerator
 	 * made by moving each pixel. Especially useful if fractions of pixel
 	 * movements are required
 	 * are required. For-example, half pixel shifts.
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void shiftBounds(int realShift, int imaginaryShift,
-	double shiftMultiplier)
+	public CompletableFuture<int[][]> shiftBounds(int realShift,
+	int imaginaryShift, double shiftMultiplier)
 	{
-		/* calculate how much shift each pixel pan shifts the real and
-		imaginerary min/max values */
-		// calculating real value per pixel
-		double hPixel = Math.abs(getState().getMaxReal()
-		- getState().getMinReal()) / getState().getXRes();
-
-		// calculating imaginary value per pixel
-		double vPixel = Math.abs(getState().getMaximaginary()
-		- getState().getMinimaginary()) / getState().getYRes();
+		return changeView(shiftedState(prevStates.peek(), realShift,
+		imaginaryShift, shiftMultiplier));
+	}
 
-		// calculating horizontal and vertical shift
-		double hShift = realShift * hPixel * shiftMultiplier;
-		double vShift = imaginaryShift * vPixel * shiftMultiplier;
+	/**
+	 * This is a helper method which creates a copy of a MandelbrotState
+	 * instance with its bounds shifted by a number of pixels, as shiftBounds
+	 * does.
+	 *
+	 * @param from the MandelbrotState instance to shift
+	 * @param realShift the number of pixels to shift by on the real axis
+	 * @param imaginaryShift the number of pixels to shift by on the imaginary
+	 * axis
+	 * @param shiftMultiplier a multiplier of the shift made by each pixel
+	 * @return the shifted MandelbrotState instance
+	 */
+	private MandelbrotState shiftedState(MandelbrotState from, int realShift,
+	int imaginaryShift, double shiftMultiplier)
+	{
+		/* move the centre in arbitrary precision by the shift times the
+		span of a pixel, worked out exactly from the precise span so that a
+		pan by whole pixels keeps the pixel grid, and panning keeps working
+		past the precision of doubles */
+		MathContext mc = from.getPrecision();
+		BigDecimal hShift = from.getRealSpan().abs().multiply(new BigDecimal(
+		realShift * shiftMultiplier)).divide(BigDecimal.valueOf(
+		from.getXRes()), mc);
+		BigDecimal vShift = from.getImaginarySpan().abs().multiply(
+		new BigDecimal(imaginaryShift * shiftMultiplier)).divide(
+		BigDecimal.valueOf(from.getYRes()), mc);
 
-		// create a new state and set the new bounds then update
-		MandelbrotState mbs = new MandelbrotState(prevStates.peek());
-		mbs.setMinReal(mbs.getMinReal() + hShift);
-		mbs.setMaxReal(mbs.getMaxReal() + hShift);
-		mbs.setMinimaginary(mbs.getMinimaginary() + vShift);
-		mbs.setMaximaginary(mbs.getMaximaginary() + vShift);
-		updateMandelbrotSet(mbs);
-		prevStates.push(mbs);
-		nextStates.removeAllElements();
+		MandelbrotState mbs = new MandelbrotState(from);
+		mbs.setPreciseBounds(mbs.getCentreReal().add(hShift),
+		mbs.getCentreImaginary().add(vShift), mbs.getRealSpan(),
+		mbs.getImaginarySpan());
+		// keeps panning onto the same grid of points, so pans can copy pixels
+		mbs.snapBounds();
+		return mbs;
 	}
 
 	/**
@@ -215,6 +596,8 @@ public class MandelbrotSetGenerator
 	 *
 	 * The method takes four integer parameters representing the real and
 	 * imaginary lower and upper pixel boundaries.
+	 * The new bounds are worked out in arbitrary precision so that zooming
+	 * can carry on past the precision of doubles.
 	 * Note: this will empty the nextStates stack.
 	 *
 	 * @param minXPixel the new lower real boundary in pixels from the current
@@ -225,31 +608,39 @@ public class MandelbrotSetGenerator
 	 * lower real boundary
 	 * @param maxYPixel the new upper imaginary boundary in pixels from the
 	 * current lower imaginary boundary
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void renderBetween(int minXPixel, int minYPixel, int maxXPixel,
-	int maxYPixel)
+	public CompletableFuture<int[][]> renderBetween(int minXPixel,
+	int minYPixel, int maxXPixel, int maxYPixel)
 	{
 		// get the real number per pixel
-		double realDiv = Math.abs(getState().getMaxReal()
-		- getState().getMinReal()) / getState().getXRes();
+		double realDiv = Math.abs(getState().getRealSpan().doubleValue())
+		/ getState().getXRes();
 		// get the imaginary number per pixel
-		double imaginaryDiv = Math.abs(getState().getMaximaginary()
-		- getState().getMinimaginary()) / getState().getYRes();
-
-		// calculate the new boundaries
-		double minReal = minXPixel * realDiv + getState().getMinReal();
-
-		double maxReal = getState().getMaxReal()
-		- (Math.abs(getState().getXRes() - maxXPixel) * realDiv);
+		double imaginaryDiv = Math.abs(getState().getImaginarySpan()
+		.doubleValue()) / getState().getYRes();
 
-		double minImaginary = minYPixel * imaginaryDiv
-		+ getState().getMinimaginary();
+		/* the new lower bound moves up by minXPixel pixels and the new upper
+		bound down by |xRes - maxXPixel| pixels, so the centre moves by half
+		their difference and the span shrinks by their sum */
+		int realCut = Math.abs(getState().getXRes() - maxXPixel);
+		int imaginaryCut = Math.abs(getState().getYRes() - maxYPixel);
 
-		double maxImaginary = getState().getMaximaginary()
-		- (Math.abs(getState().getYRes() - maxYPixel) * imaginaryDiv);
+		BigDecimal centreReal = getState().getCentreReal().add(
+		new BigDecimal((minXPixel - realCut) * realDiv / 2));
+		BigDecimal centreImaginary = getState().getCentreImaginary().add(
+		new BigDecimal((minYPixel - imaginaryCut) * imaginaryDiv / 2));
+		BigDecimal realSpan = getState().getRealSpan().subtract(
+		new BigDecimal((minXPixel + realCut) * realDiv));
+		BigDecimal imaginarySpan = getState().getImaginarySpan().subtract(
+		new BigDecimal((minYPixel + imaginaryCut) * imaginaryDiv));
 
 		// change the bounds using the new boundaries
-		setBounds(minReal, maxReal, minImaginary, maxImaginary);
+		MandelbrotState mbs = new MandelbrotState(prevStates.peek());
+		mbs.setPreciseBounds(centreReal, centreImaginary, realSpan,
+		imaginarySpan);
+		return changeView(mbs);
 	}
 
 	/**
@@ -261,14 +652,35 @@ public class MandelbrotSetGenerator
  	 * Note: this will empty the nextStates stack.
 	 *
 	 * @param sqRadius the squared radius to use when determining
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void setSqRadius(double sqRadius)
+	public CompletableFuture<int[][]> setSqRadius(double sqRadius)
 	{
 		MandelbrotState mbs = new MandelbrotState(prevStates.peek());
 		mbs.setSqRadius(sqRadius);
-		updateMandelbrotSet(mbs);
-		prevStates.push(mbs);
-		nextStates.removeAllElements();
+		return changeState(mbs);
+	}
+
+	/**
+	 * This method should be used to change how the Mandelbrot Set is
+	 * rendered, as set by MandelbrotState.setRenderMode.
+	 * The method creates a new MandelbrotState instance using the new input,
+	 * then calls the updateMandelbrotSet function.
+ 	 * Note: this will empty the nextStates stack.
+	 *
+	 * @param renderMode BRUTE_FORCE_RENDER, SUBDIVISION_RENDER or
+	 * CACHED_TILE_RENDER
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
+	 * @throws IllegalArgumentException if renderMode is not a render mode
+	 */
+	public CompletableFuture<int[][]> setRenderMode(int renderMode)
+	throws IllegalArgumentException
+	{
+		MandelbrotState mbs = new MandelbrotState(prevStates.peek());
+		mbs.setRenderMode(renderMode);
+		return changeState(mbs);
 	}
 
 	/**
@@ -280,14 +692,14 @@ public class MandelbrotSetGenerator
 	 *
 	 * @param maxIterations the maximum number of iterations to iterate the
 	 * complex formula
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void setMaxIterations(int maxIterations)
+	public CompletableFuture<int[][]> setMaxIterations(int maxIterations)
 	{
 		MandelbrotState mbs = new MandelbrotState(prevStates.peek());
 		mbs.setMaxIterations(maxIterations);
-		updateMandelbrotSet(mbs);
-		prevStates.push(mbs);
-		nextStates.removeAllElements();
+		return changeState(mbs);
 	}
 
 	/**
@@ -299,8 +711,10 @@ public class MandelbrotSetGenerator
 	 *
 	 * @param xRes the new horizontal resolution
 	 * @param yRes the new vertical resolution
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void setResolution(int xRes, int yRes)
+	public CompletableFuture<int[][]> setResolution(int xRes, int yRes)
 	throws IllegalArgumentException
 	{
 		if (xRes <= 0 || yRes <= 0)
@@ -310,16 +724,17 @@ public class MandelbrotSetGenerator
 		MandelbrotState mbs = new MandelbrotState(prevStates.peek());
 		mbs.setXRes(xRes);
 		mbs.setYRes(yRes);
-		updateMandelbrotSet(mbs);
-		prevStates.push(mbs);
-		nextStates.removeAllElements();
+		return changeState(mbs);
 	}
 
 	/**
 	 * This method should be called to revert back to the previous Mandelbrot
 	 * Set before the last change was made.
+	 *
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void undoState()
+	public CompletableFuture<int[][]> undoState()
 	{
 		if(prevStates.size() > 1)
 		{
@@ -328,51 +743,421 @@ public class MandelbrotSetGenerator
 			nextStates.push(prevStates.pop());
 			/* now update mandelbrotSet to the state of the last item in
 			prevStates */
-			updateMandelbrotSet(getState());
+			return updateMandelbrotSet(nextStates.peek(), getState());
 		}
+		return CompletableFuture.completedFuture(mandelbrotSet);
 	}
 
 	/**
 	 * This method should be called to go back to the Mandelbrot Set before the
 	 * last undo call was made.
+	 *
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void redoState()
+	public CompletableFuture<int[][]> redoState()
 	{
 		if(!nextStates.empty())
 		{
 			/* The idea is to move the last item in nextStates to prevStates
 			then return the last item in prevStates */
+			MandelbrotState old = getState();
 			prevStates.push(nextStates.pop());
-			updateMandelbrotSet(getState());
+			return updateMandelbrotSet(old, getState());
 		}
+		return CompletableFuture.completedFuture(mandelbrotSet);
 	}
 
 	/**
 	 * This method should be called to reset the Mandelbrot Set to the state
 	 * given when the this Object was constructed.
 	 * Note: this method will clear nextStates.
+	 *
+	 * @return the future of the new set, already complete unless rendering
+	 * asynchronously
 	 */
-	public void reset()
+	public CompletableFuture<int[][]> reset()
 	{
-		updateMandelbrotSet(origonalState);
-		prevStates.push(origonalState);
-		nextStates.removeAllElements();
+		return changeState(origonalState);
+	}
+
+	/**
+	 * This is a helper method which is called by the methods moving the view
+	 * to affect their changes. In auto iterations mode it first chooses the
+	 * maximum iterations of the new view, then calls changeState.
+	 *
+	 * @param mbs the new MandelbrotState instance to render
+	 * @return the future of the new set
+	 */
+	private CompletableFuture<int[][]> changeView(MandelbrotState mbs)
+	{
+		if (autoIterations)
+		{
+			MandelbrotState previousState;
+			int[][] previousSet;
+			synchronized (this)
+			{
+				previousState = renderedState;
+				previousSet = renderedSet;
+			}
+			mbs.setMaxIterations(IterationTuner.chooseIterations(mbs,
+			mbs.getMaxIterations(), previousState, previousSet));
+		}
+		return changeState(mbs);
 	}
 
 	/**
 	 * This is a helper method which is called by change methods to affect
 	 * their changes.
-	 * The method updates the mandelbrotSet using the getMandelbrotSet method
-	 * of a MandelbrotState instance. Then, calls the firePropertyChange
-	 * method of the notifier and finally adds the new MandelbrotState
-	 * instance to the prevStates.
+	 * The method adds the new MandelbrotState instance to the prevStates,
+	 * empties nextStates and renders the new set.
 	 *
 	 * @param mbs the new MandelbrotState instance to render
+	 * @return the future of the new set
 	 */
-	private void updateMandelbrotSet(MandelbrotState mbs)
+	private CompletableFuture<int[][]> changeState(MandelbrotState mbs)
 	{
-		mandelbrotSet = mbs.getMandelbrotSet();
-		notifier.firePropertyChange("mandelbrotSet", prevStates.peek(), mbs);
+		MandelbrotState old = prevStates.peek();
+		prevStates.push(mbs);
+		nextStates.removeAllElements();
+		return updateMandelbrotSet(old, mbs);
+	}
+
+	/**
+	 * This is a helper method which renders the set of a MandelbrotState
+	 * instance, cancelling any render it supersedes. In asynchronous mode the
+	 * render is handed to renderExecutor, otherwise it is done before
+	 * returning.
+	 * Cancelling the returned future also cancels the render.
+	 *
+	 * @param old the MandelbrotState instance being replaced
+	 * @param mbs the new MandelbrotState instance to render
+	 * @return the future of the new set
+	 */
+	private CompletableFuture<int[][]> updateMandelbrotSet(
+	MandelbrotState old, MandelbrotState mbs)
+	{
+		AtomicBoolean cancelFlag = new AtomicBoolean();
+		AtomicBoolean superseded;
+		synchronized (this)
+		{
+			superseded = currentRender;
+			currentRender = cancelFlag;
+		}
+		if (superseded != null) superseded.set(true);
+		cancelSpeculation();
+		// the stacks are read here, as they may change while rendering
+		Map<MandelbrotState, String> candidates = speculative
+		? speculationCandidates(mbs) : null;
+
+		if (!asynchronous)
+		{
+			return CompletableFuture.completedFuture(render(old, mbs,
+			cancelFlag, candidates));
+		}
+		CompletableFuture<int[][]> future = new CompletableFuture<>();
+		future.whenComplete((set, e) ->
+		{
+			if (future.isCancelled()) cancelFlag.set(true);
+		});
+		renderExecutor.execute(() ->
+		{
+			try
+			{
+				future.complete(render(old, mbs, cancelFlag, candidates));
+			}
+			catch (CancellationException e)
+			{
+				future.cancel(false);
+			}
+			catch (RuntimeException | Error e)
+			{
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * This is a helper method which does the rendering for
+	 * updateMandelbrotSet.
+	 * A view rendered recently is taken from the renderCache. Where the new
+	 * view is the last rendered view moved by whole pixels, or
+	 * its pixel grid otherwise lines up with the last rendered view, the
+	 * shared pixels are reused and only the others calculated. A change of
+	 * the maximum iterations alone only iterates the pixels which reached the
+	 * lower maximum, carrying on from their saved orbits. A zoom in
+	 * first shows an enlarged preview of the last rendered set. Otherwise the method updates the mandelbrotSet using the
+	 * getMandelbrotSet method of a copy of the MandelbrotState instance, or
+	 * getMandelbrotSetProgressive in progressive mode. Then, unless the render
+	 * was superseded, calls the firePropertyChange method of the notifier
+	 * and starts rendering the speculation candidates.
+	 *
+	 * @param old the MandelbrotState instance being replaced
+	 * @param mbs the new MandelbrotState instance to render
+	 * @param cancelFlag becomes true when the render is superseded
+	 * @param candidates the views to render speculatively afterwards, with
+	 * their kinds, or null
+	 * @return the new set
+	 * @throws CancellationException if the render was superseded
+	 */
+	private int[][] render(MandelbrotState old, MandelbrotState mbs,
+	AtomicBoolean cancelFlag, Map<MandelbrotState, String> candidates)
+	throws CancellationException
+	{
+		if (cancelFlag.get())
+		{
+			throw new CancellationException("Render superseded");
+		}
+		/* the copy carries the cancel flag, so that a state on the stacks
+		which is rendered again later is not affected */
+		MandelbrotState job = new MandelbrotState(mbs);
+		job.setCancelFlag(cancelFlag);
+		int[][] previousSet;
+		MandelbrotState previousState;
+		OrbitBuffer previousOrbits;
+		synchronized (this)
+		{
+			previousSet = renderedSet;
+			previousState = renderedState;
+			previousOrbits = renderedOrbits;
+		}
+		int[][] set = renderCache.get(mbs);
+		if (set == null)
+		{
+			set = speculationCache.get(mbs);
+			if (set != null) speculationUsed(mbs);
+		}
+		if (set == null)
+		{
+			set = reuseRenderedSet(previousState, previousSet, job);
+		}
+		OrbitBuffer orbits = null;
+		if (set == null && IncrementalRenderer.canRaiseIterations(
+		previousState, job))
+		{
+			// carry on from the saved orbits, leaving them as they were
+			orbits = previousOrbits == null ? new OrbitBuffer(job.getXRes(),
+			job.getYRes()) : new OrbitBuffer(previousOrbits);
+			set = IncrementalRenderer.raiseIterations(previousState,
+			previousSet, orbits, job);
+		}
+		if (set == null)
+		{
+			// a zoom in shows the enlarged previous set until it is rendered
+			int[][] preview = IncrementalRenderer.zoomPreview(previousState,
+			previousSet, job);
+			if (preview != null) showPartialSet(preview, cancelFlag);
+		}
+		if (set == null && progressive)
+		{
+			set = job.getMandelbrotSetProgressive(partialSet ->
+			showPartialSet(partialSet, cancelFlag));
+		}
+		else if (set == null)
+		{
+			set = job.getMandelbrotSet();
+		}
+		synchronized (this)
+		{
+			if (cancelFlag.get())
+			{
+				throw new CancellationException("Render superseded");
+			}
+			mandelbrotSet = set;
+			renderedSet = set;
+			renderedState = mbs;
+			renderedOrbits = orbits;
+		}
+		renderCache.put(mbs, set);
+		notifier.firePropertyChange("mandelbrotSet", old, mbs);
+		if (candidates != null) startSpeculation(mbs, set, cancelFlag,
+		candidates);
+		return set;
+	}
+
+	/**
+	 * This is a helper method which lists the views the user is likely to
+	 * move to from a MandelbrotState instance, which must be on top of
+	 * prevStates: the views of undo and redo, a pan by a quarter of the view
+	 * each way and a zoom out to twice the spans, in the order they are
+	 * rendered.
+	 *
+	 * @param mbs the MandelbrotState instance being rendered
+	 * @return the candidate views mapped to their kinds
+	 */
+	private Map<MandelbrotState, String> speculationCandidates(
+	MandelbrotState mbs)
+	{
+		Map<MandelbrotState, String> candidates = new LinkedHashMap<>();
+		if (prevStates.size() > 1)
+		{
+			candidates.putIfAbsent(prevStates.get(prevStates.size() - 2),
+			"undo");
+		}
+		if (!nextStates.empty()) candidates.putIfAbsent(nextStates.peek(),
+		"redo");
+		int xShift = (int) Math.round(mbs.getXRes() * SPECULATIVE_PAN);
+		int yShift = (int) Math.round(mbs.getYRes() * SPECULATIVE_PAN);
+		candidates.putIfAbsent(shiftedState(mbs, xShift, 0, 1), "pan");
+		candidates.putIfAbsent(shiftedState(mbs, -xShift, 0, 1), "pan");
+		candidates.putIfAbsent(shiftedState(mbs, 0, yShift, 1), "pan");
+		candidates.putIfAbsent(shiftedState(mbs, 0, -yShift, 1), "pan");
+		MandelbrotState zoomOut = new MandelbrotState(mbs);
+		zoomOut.setPreciseBounds(mbs.getCentreReal(),
+		mbs.getCentreImaginary(), mbs.getRealSpan().multiply(
+		BigDecimal.valueOf(2)), mbs.getImaginarySpan().multiply(
+		BigDecimal.valueOf(2)));
+		candidates.putIfAbsent(zoomOut, "zoom out");
+		return candidates;
+	}
+
+	/**
+	 * This is a helper method which starts rendering the speculation
+	 * candidates of a just rendered set on speculationExecutor, unless the
+	 * render has already been superseded.
+	 *
+	 * @param state the MandelbrotState instance just rendered
+	 * @param set the set just rendered
+	 * @param renderFlag the cancel flag of the render
+	 * @param candidates the views to render mapped to their kinds
+	 */
+	private synchronized void startSpeculation(MandelbrotState state,
+	int[][] set, AtomicBoolean renderFlag,
+	Map<MandelbrotState, String> candidates)
+	{
+		if (currentRender != renderFlag || renderFlag.get()) return;
+		AtomicBoolean cancelFlag = new AtomicBoolean();
+		currentSpeculation = cancelFlag;
+		// forget speculations which have been dropped from their cache
+		speculations.keySet().removeIf(speculated ->
+		!speculationCache.contains(speculated));
+		speculationTask = speculationExecutor.submit(() ->
+		{
+			try
+			{
+				speculate(state, set, cancelFlag, candidates);
+			}
+			catch (CancellationException e)
+			{
+				// the user moved on
+			}
+		});
+	}
+
+	/**
+	 * This is a helper method which renders the speculation candidates not
+	 * already cached into the speculationCache, one after another, reusing
+	 * the pixels they share with the set just rendered. It stops as soon as
+	 * it is cancelled.
+	 *
+	 * @param state the MandelbrotState instance just rendered
+	 * @param set the set just rendered
+	 * @param cancelFlag becomes true when the speculation is cancelled
+	 * @param candidates the views to render mapped to their kinds
+	 * @throws CancellationException if the speculation was cancelled
+	 */
+	private void speculate(MandelbrotState state, int[][] set,
+	AtomicBoolean cancelFlag, Map<MandelbrotState, String> candidates)
+	throws CancellationException
+	{
+		for (Map.Entry<MandelbrotState, String> candidate
+		: candidates.entrySet())
+		{
+			MandelbrotState view = candidate.getKey();
+			if (cancelFlag.get()) return;
+			if (renderCache.contains(view) || speculationCache.contains(view))
+			{
+				continue;
+			}
+			MandelbrotState job = new MandelbrotState(view);
+			job.setCancelFlag(cancelFlag);
+			job.setRenderPool(SPECULATION_POOL);
+			int[][] speculated = reuseRenderedSet(state, set, job);
+			if (speculated == null) speculated = job.getMandelbrotSet();
+			if (cancelFlag.get()) return;
+			speculationCache.put(view, speculated);
+			synchronized (this)
+			{
+				speculations.put(view, candidate.getValue());
+				speculationsRendered.merge(candidate.getValue(), 1,
+				Integer::sum);
+			}
+		}
+	}
+
+	/**
+	 * This is a helper method which counts and logs the use of a
+	 * speculatively rendered view.
+	 *
+	 * @param mbs the MandelbrotState instance moved to
+	 */
+	private synchronized void speculationUsed(MandelbrotState mbs)
+	{
+		String kind = speculations.remove(mbs);
+		if (kind == null) return;
+		speculationsUsed.merge(kind, 1, Integer::sum);
+		LOGGER.fine("Speculative " + kind + " used: "
+		+ getSpeculationReport());
+	}
+
+	/**
+	 * This is a helper method which cancels the speculation in progress, if
+	 * any.
+	 */
+	private void cancelSpeculation()
+	{
+		AtomicBoolean cancelled;
+		synchronized (this)
+		{
+			cancelled = currentSpeculation;
+			currentSpeculation = null;
+		}
+		if (cancelled != null) cancelled.set(true);
+	}
+
+	/**
+	 * This is a helper method which renders the set of a MandelbrotState
+	 * instance from the last rendered set, when their views share pixels.
+	 *
+	 * @param previousState the MandelbrotState of the last rendered set
+	 * @param previousSet the last rendered set
+	 * @param job the MandelbrotState instance to render
+	 * @return the new set, or null if it has to be rendered in full
+	 */
+	private int[][] reuseRenderedSet(MandelbrotState previousState,
+	int[][] previousSet, MandelbrotState job)
+	{
+		int[][] set = IncrementalRenderer.pan(previousState, previousSet, job);
+		if (set == null)
+		{
+			set = IncrementalRenderer.reuseAligned(previousState, previousSet,
+			job);
+		}
+		if (set == null)
+		{
+			set = IncrementalRenderer.lowerIterations(previousState,
+			previousSet, job);
+		}
+		return set;
+	}
+
+	/**
+	 * This is a helper method which shows a set that is not final yet, by
+	 * updating the mandelbrotSet and sending observers a
+	 * "partialMandelbrotSet" event, unless the render was superseded.
+	 *
+	 * @param partialSet the set to show
+	 * @param cancelFlag becomes true when the render is superseded
+	 */
+	private void showPartialSet(int[][] partialSet, AtomicBoolean cancelFlag)
+	{
+		if (!cancelFlag.get())
+		{
+			mandelbrotSet = partialSet;
+			notifier.firePropertyChange("partialMandelbrotSet", null,
+			partialSet);
+		}
 	}
 
 	/**
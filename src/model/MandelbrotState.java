@@ -1,6 +1,15 @@
 package model;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * This is a simple class that defines Objects which extend the
@@ -14,6 +23,13 @@ import java.io.Serializable;
  * The class provides three constructors and setter/getter methods for all
  * fields (settings) used to calculate a Mandelbrot Set.
  *
+ * Past a magnification of around 1e13 doubles can no longer tell
+ * neighbouring pixels apart, so the bounds may also be given as a centre and
+ * span in arbitrary precision using setPreciseBounds. getMandelbrotSet picks
+ * the cheapest calculator precise enough for the pixel spacing: doubles, then
+ * the DoubleDoubleCalculator down to PERTURBATION_SPACING, then the
+ * PerturbationCalculator.
+ *
  * The class also implements the Serializable interface to allow for writing
  * instances of this class to file
  *
@@ -24,6 +40,42 @@ import java.io.Serializable;
 public class MandelbrotState extends MandelbrotCalculator
 implements Serializable
 {
+	/*
+	 * Kept at the value of the first version so earlier saved files can
+	 * still be opened.
+	 */
+	private static final long serialVersionUID = -8459636934101339882L;
+
+	/**
+	 * The pixel spacing relative to the size of the centre below which a view
+	 * is rendered by perturbation.
+	 */
+	public static final double DEEP_ZOOM_SPACING = 1e-13;
+
+	/**
+	 * The pixel spacing relative to the size of the centre below which even
+	 * double-double precision is not enough.
+	 */
+	public static final double PERTURBATION_SPACING = 1e-28;
+
+	/**
+	 * The number of significant digits kept beyond those needed to tell
+	 * pixels apart when the precise bounds are rounded.
+	 */
+	private static final int GUARD_DIGITS = 20;
+
+	/**
+	 * The number of significant bits snapBounds keeps of the pixel spacing.
+	 */
+	private static final int SNAP_BITS = 16;
+
+	/**
+	 * The fewest bits of a pixel spacing snapBounds keeps below it when it
+	 * moves a lower bound, so that it moves by no more than a 2^-9th of a
+	 * pixel.
+	 */
+	private static final int SNAP_FRACTION_BITS = 8;
+
 	/**
 	 * The horizontal resolution in pixels of the mandelbrotSet.
 	 */
@@ -65,6 +117,30 @@ implements Serializable
 	 */
 	private double sqRadius;
 
+	/**
+	 * The real component of the centre of the view in arbitrary precision, or
+	 * null if the double bounds are exact.
+	 */
+	private BigDecimal centreReal;
+
+	/**
+	 * The imaginary component of the centre of the view in arbitrary
+	 * precision, or null if the double bounds are exact.
+	 */
+	private BigDecimal centreImaginary;
+
+	/**
+	 * The width of the view (maxReal - minReal) in arbitrary precision, or
+	 * null if the double bounds are exact.
+	 */
+	private BigDecimal realSpan;
+
+	/**
+	 * The height of the view (maxImaginary - minImaginary) in arbitrary
+	 * precision, or null if the double bounds are exact.
+	 */
+	private BigDecimal imaginarySpan;
+
 
 	/**
 	 * This Constructor should be used to create a MandelbrotState Object with
@@ -144,6 +220,13 @@ implements Serializable
 		this.minImaginary = prevMandelbrot.minImaginary;
 		this.maxImaginary = prevMandelbrot.maxImaginary;
 		this.sqRadius = prevMandelbrot.sqRadius;
+		this.centreReal = prevMandelbrot.centreReal;
+		this.centreImaginary = prevMandelbrot.centreImaginary;
+		this.realSpan = prevMandelbrot.realSpan;
+		this.imaginarySpan = prevMandelbrot.imaginarySpan;
+		// render settings are carried over so that every new view is
+		// calculated the same way
+		copyRenderSettings(prevMandelbrot);
 	}
 
 	/**
@@ -233,6 +316,7 @@ implements Serializable
 	public void setMinReal(double minReal)
 	{
 		this.minReal = minReal;
+		clearPreciseBounds();
 	}
 
 	/**
@@ -254,6 +338,7 @@ implements Serializable
 	public void setMaxReal(double maxReal)
 	{
 		this.maxReal = maxReal;
+		clearPreciseBounds();
 	}
 
 	/**
@@ -275,6 +360,7 @@ implements Serializable
 	public void setMinimaginary(double minImaginary)
 	{
 		this.minImaginary = minImaginary;
+		clearPreciseBounds();
 	}
 
 	/**
@@ -296,6 +382,213 @@ implements Serializable
 	public void setMaximaginary(double maxImaginary)
 	{
 		this.maxImaginary = maxImaginary;
+		clearPreciseBounds();
+	}
+
+	/**
+	 * Returns true if the bounds are held in arbitrary precision.
+	 *
+	 * @return true if setPreciseBounds was used to set the bounds
+	 */
+	public boolean hasPreciseBounds()
+	{
+		return centreReal != null;
+	}
+
+	/**
+	 * Returns the real component of the centre of the view.
+	 *
+	 * @return the real component of the centre in arbitrary precision
+	 */
+	public BigDecimal getCentreReal()
+	{
+		if (centreReal != null) return centreReal;
+		return new BigDecimal(minReal).add(new BigDecimal(maxReal))
+		.divide(BigDecimal.valueOf(2));
+	}
+
+	/**
+	 * Returns the imaginary component of the centre of the view.
+	 *
+	 * @return the imaginary component of the centre in arbitrary precision
+	 */
+	public BigDecimal getCentreImaginary()
+	{
+		if (centreImaginary != null) return centreImaginary;
+		return new BigDecimal(minImaginary).add(new BigDecimal(maxImaginary))
+		.divide(BigDecimal.valueOf(2));
+	}
+
+	/**
+	 * Returns the width of the view, maxReal - minReal.
+	 *
+	 * @return the width of the view in arbitrary precision
+	 */
+	public BigDecimal getRealSpan()
+	{
+		if (realSpan != null) return realSpan;
+		return new BigDecimal(maxReal).subtract(new BigDecimal(minReal));
+	}
+
+	/**
+	 * Returns the height of the view, maxImaginary - minImaginary.
+	 *
+	 * @return the height of the view in arbitrary precision
+	 */
+	public BigDecimal getImaginarySpan()
+	{
+		if (imaginarySpan != null) return imaginarySpan;
+		return new BigDecimal(maxImaginary).subtract(new BigDecimal(minImaginary));
+	}
+
+	/**
+	 * Sets the bounds of the view in arbitrary precision. The double bounds
+	 * are set to the nearest doubles of the new bounds.
+	 * The centre is rounded to the digits needed to tell pixels apart plus
+	 * GUARD_DIGITS.
+	 *
+	 * @param centreReal the real component of the centre of the view
+	 * @param centreImaginary the imaginary component of the centre of the view
+	 * @param realSpan the width of the view, maxReal - minReal
+	 * @param imaginarySpan the height of the view, maxImaginary - minImaginary
+	 */
+	public void setPreciseBounds(BigDecimal centreReal,
+	BigDecimal centreImaginary, BigDecimal realSpan, BigDecimal imaginarySpan)
+	{
+		MathContext mc = getPrecision(centreReal, centreImaginary, realSpan,
+		imaginarySpan);
+		this.centreReal = centreReal.round(mc);
+		this.centreImaginary = centreImaginary.round(mc);
+		this.realSpan = realSpan.round(MathContext.DECIMAL64);
+		this.imaginarySpan = imaginarySpan.round(MathContext.DECIMAL64);
+		BigDecimal halfReal = this.realSpan.divide(BigDecimal.valueOf(2));
+		BigDecimal halfImaginary =
+		this.imaginarySpan.divide(BigDecimal.valueOf(2));
+		this.minReal = this.centreReal.subtract(halfReal).doubleValue();
+		this.maxReal = this.centreReal.add(halfReal).doubleValue();
+		this.minImaginary =
+		this.centreImaginary.subtract(halfImaginary).doubleValue();
+		this.maxImaginary =
+		this.centreImaginary.add(halfImaginary).doubleValue();
+	}
+
+	/**
+	 * Moves the bounds of this view by a small fraction of a pixel onto a
+	 * coarse grid of doubles, on which the point of every pixel is worked
+	 * out exactly. Two snapped views with the same pixel spacing which are
+	 * a whole number of pixels apart then calculate their shared pixels at
+	 * exactly the same points, so a pan can copy them. The precise bounds
+	 * become those of the snapped doubles. Views too deep for such a grid
+	 * are left as they are.
+	 */
+	void snapBounds()
+	{
+		double[] real = snappedBounds(minReal, maxReal, xRes);
+		double[] imaginary = snappedBounds(minImaginary, maxImaginary, yRes);
+		if (real == null || imaginary == null) return;
+		minReal = real[0];
+		maxReal = real[1];
+		minImaginary = imaginary[0];
+		maxImaginary = imaginary[1];
+		clearPreciseBounds();
+	}
+
+	/**
+	 * Helper method used to snap the bounds along one axis. The pixel spacing
+	 * is rounded to SNAP_BITS significant bits and the lower bound to a
+	 * multiple of the spacing over a power of two, so every point
+	 * min + x * step is a multiple of that fraction small enough to be exact.
+	 *
+	 * @return the lower and upper bound, or null if they cannot be snapped
+	 */
+	private static double[] snappedBounds(double min, double max, int res)
+	{
+		double step = (max - min) / res;
+		if (step == 0 || !Double.isFinite(step) || !Double.isFinite(min))
+		{
+			return null;
+		}
+		double unit = Math.scalb(1.0, Math.getExponent(step) - SNAP_BITS + 1);
+		double snappedStep = Math.rint(step / unit) * unit;
+		// the multiples of the fraction must stay below 2^(53 - SNAP_BITS)
+		double pixels = Math.abs(min / snappedStep) + res;
+		int fractionBits = 53 - SNAP_BITS - 2 - Math.getExponent(pixels);
+		if (fractionBits < SNAP_FRACTION_BITS) return null;
+		double fraction = Math.scalb(snappedStep, -fractionBits);
+		double snappedMin = Math.rint(min / fraction) * fraction;
+		double snappedMax = snappedMin + res * snappedStep;
+		if ((snappedMax - snappedMin) / res != snappedStep) return null;
+		return new double[] {snappedMin, snappedMax};
+	}
+
+	/**
+	 * Returns a MathContext with enough significant digits to tell apart
+	 * neighbouring pixels of this view, plus GUARD_DIGITS.
+	 *
+	 * @return the precision needed to work with the centre of this view
+	 */
+	public MathContext getPrecision()
+	{
+		return getPrecision(getCentreReal(), getCentreImaginary(),
+		getRealSpan(), getImaginarySpan());
+	}
+
+	/**
+	 * Helper method used to work out the digits needed for a view with the
+	 * given centre and span.
+	 */
+	private MathContext getPrecision(BigDecimal centreReal,
+	BigDecimal centreImaginary, BigDecimal realSpan, BigDecimal imaginarySpan)
+	{
+		double magnitude = Math.max(Math.abs(centreReal.doubleValue()),
+		Math.abs(centreImaginary.doubleValue()));
+		double spacing = Math.min(Math.abs(realSpan.doubleValue()) / xRes,
+		Math.abs(imaginarySpan.doubleValue()) / yRes);
+		int digits = 0;
+		if (magnitude > 0 && spacing > 0)
+		{
+			digits = (int) Math.ceil(Math.log10(magnitude / spacing));
+		}
+		return new MathContext(Math.max(digits, 0) + GUARD_DIGITS);
+	}
+
+	/**
+	 * Returns true if neighbouring pixels of this view are too close together
+	 * to be told apart reliably with doubles.
+	 *
+	 * @return true if the view should be rendered by perturbation
+	 */
+	public boolean isDeepZoom()
+	{
+		return getRelativeSpacing() < DEEP_ZOOM_SPACING;
+	}
+
+	/**
+	 * Returns the distance between neighbouring pixels divided by the size of
+	 * the centre, which decides the precision needed to render the view.
+	 *
+	 * @return the relative pixel spacing, or infinity at the origin
+	 */
+	public double getRelativeSpacing()
+	{
+		double magnitude = Math.max(Math.abs(getCentreReal().doubleValue()),
+		Math.abs(getCentreImaginary().doubleValue()));
+		double spacing = Math.min(
+		Math.abs(getRealSpan().doubleValue()) / xRes,
+		Math.abs(getImaginarySpan().doubleValue()) / yRes);
+		return spacing / magnitude;
+	}
+
+	/**
+	 * Helper method used to drop the precise bounds once a double bound is
+	 * set directly.
+	 */
+	private void clearPreciseBounds()
+	{
+		centreReal = null;
+		centreImaginary = null;
+		realSpan = null;
+		imaginarySpan = null;
 	}
 
 	/**
@@ -327,7 +620,358 @@ implements Serializable
 	 */
 	public int[][] getMandelbrotSet()
 	{
+		if (getDeepZoom() && isDeepZoom())
+		{
+			if (getRelativeSpacing() >= PERTURBATION_SPACING)
+			{
+				return new DoubleDoubleCalculator(this).calcMandelbrotSet();
+			}
+			return new PerturbationCalculator(this).calcMandelbrotSet();
+		}
 		return calcMandelbrotSet(xRes, yRes, minReal, maxReal, minImaginary,
 		maxImaginary, maxIterations, sqRadius);
 	}
+
+	/**
+	 * Returns the Mandelbrot Set, reusing the set of a finer view lying inside
+	 * this one, as rendered for a deeper frame of a zoom. Pixels inside the
+	 * finer view take the value of its nearest pixel, and only the border
+	 * around it is calculated. If the finer view cannot be used, because it
+	 * is coarser, outside this view or has a lower maximum iterations, the
+	 * whole set is calculated.
+	 *
+	 * @param finer the state of the finer view
+	 * @param finerSet the set of the finer view
+	 * @return the Mandelbrot Set as a 2d array
+	 */
+	public int[][] getMandelbrotSetAround(MandelbrotState finer,
+	int[][] finerSet)
+	{
+		int[][] set = IncrementalRenderer.zoomAround(finer, finerSet, this);
+		return set != null ? set : getMandelbrotSet();
+	}
+
+	/**
+	 * Returns the Mandelbrot Set, keeping each finished tile in a checkpoint
+	 * file so that a render stopped part way, by a crash or by stopFlag, can
+	 * be resumed by calling this method again with the same file.
+	 *
+	 * The set is calculated one RenderJournal.TILE_SIZE square tile at a
+	 * time, each tile in parallel, as the view of getRegionState. Tiles
+	 * already in the file are read back instead of being calculated, so a
+	 * resumed render gives exactly the set an uninterrupted one would, and at
+	 * most the tile in progress is lost.
+	 *
+	 * @param checkpoint the checkpoint file of this render
+	 * @param stopFlag a flag which stops the render when it becomes true, or
+	 * null
+	 * @return the Mandelbrot Set as a 2d array
+	 * @throws IOException if the checkpoint file cannot be used, or is that
+	 * of another render
+	 * @throws CancellationException if the render was stopped by stopFlag
+	 */
+	public int[][] getMandelbrotSetCheckpointed(Path checkpoint,
+	AtomicBoolean stopFlag) throws IOException, CancellationException
+	{
+		int tile = RenderJournal.TILE_SIZE;
+		int[][] set = new int[yRes][xRes];
+		try (RenderJournal journal = new RenderJournal(checkpoint, this, xRes,
+		yRes))
+		{
+			for (int y0 = 0; y0 < yRes; y0 += tile)
+			{
+				for (int x0 = 0; x0 < xRes; x0 += tile)
+				{
+					int width = Math.min(tile, xRes - x0);
+					int height = Math.min(tile, yRes - y0);
+					int[] values = journal.get(x0, y0, width, height);
+					if (values == null)
+					{
+						if (stopFlag != null && stopFlag.get())
+						{
+							throw new CancellationException("Render stopped");
+						}
+						MandelbrotState region = getRegionState(x0, y0, x0
+						+ width, y0 + height);
+						region.setCancelFlag(stopFlag);
+						int[][] regionSet = region.getMandelbrotSet();
+						values = new int[width * height];
+						for (int y = 0; y < height; y++)
+						{
+							System.arraycopy(regionSet[y], 0, values, y * width,
+							width);
+						}
+						journal.put(x0, y0, width, height, values);
+					}
+					for (int y = 0; y < height; y++)
+					{
+						System.arraycopy(values, y * width, set[y0 + y], x0,
+						width);
+					}
+				}
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Returns a state whose view is the pixels x0 <= x < x1, y0 <= y < y1 of
+	 * this state's view, at the same pixel spacing. Its bounds are worked out
+	 * in arbitrary precision, so that it can be a region of a deep view.
+	 *
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the last column of the region
+	 * @param y1 the row after the last row of the region
+	 * @return a state of (x1 - x0) by (y1 - y0) pixels rendering the region
+	 * @throws IllegalArgumentException if the region is empty or not within
+	 * the view
+	 */
+	public MandelbrotState getRegionState(int x0, int y0, int x1, int y1)
+	throws IllegalArgumentException
+	{
+		if (x0 < 0 || y0 < 0 || x1 > xRes || y1 > yRes || x0 >= x1
+		|| y0 >= y1)
+		{
+			throw new IllegalArgumentException("Region not within the view");
+		}
+		MandelbrotState region = new MandelbrotState(this);
+		region.setXRes(x1 - x0);
+		region.setYRes(y1 - y0);
+		region.setPreciseBounds(
+		regionCentre(getCentreReal(), getRealSpan(), x0, x1, xRes),
+		regionCentre(getCentreImaginary(), getImaginarySpan(), y0, y1, yRes),
+		regionSpan(getRealSpan(), x0, x1, xRes),
+		regionSpan(getImaginarySpan(), y0, y1, yRes));
+		return region;
+	}
+
+	/**
+	 * Helper method used to work out the centre of the pixels from to
+	 * to - 1 of pixels across a span: (from + to - pixels) / 2 pixels from
+	 * the centre of the span.
+	 */
+	private static BigDecimal regionCentre(BigDecimal centre, BigDecimal span,
+	int from, int to, int pixels)
+	{
+		int scale = Math.max(span.scale(), 0) + GUARD_DIGITS;
+		return centre.add(span.multiply(BigDecimal.valueOf((long) from + to
+		- pixels)).divide(BigDecimal.valueOf(2L * pixels), scale,
+		RoundingMode.HALF_EVEN));
+	}
+
+	/**
+	 * Helper method used to work out the span of the pixels from to to - 1
+	 * of pixels across a span.
+	 */
+	private static BigDecimal regionSpan(BigDecimal span, int from, int to,
+	int pixels)
+	{
+		int scale = Math.max(span.scale(), 0) + GUARD_DIGITS;
+		return span.multiply(BigDecimal.valueOf(to - from)).divide(
+		BigDecimal.valueOf(pixels), scale, RoundingMode.HALF_EVEN);
+	}
+
+	/**
+	 * Returns true if the set of this state is calculated in single
+	 * precision, so that only sets calculated in the same precision share
+	 * pixels with it.
+	 *
+	 * @return true if the set is calculated with floats
+	 */
+	boolean isSinglePrecisionSet()
+	{
+		return usesSinglePrecision(xRes, yRes, minReal, maxReal, minImaginary,
+		maxImaginary, maxIterations);
+	}
+
+	/**
+	 * Calculates only the pixels x0 <= x < x1, y0 <= y < y1 of the Mandelbrot
+	 * Set of this state, into a set which holds the other pixels already.
+	 * The region is always calculated in double precision.
+	 *
+	 * @param set the [yRes][xRes] set to fill in
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the last column of the region
+	 * @param y1 the row after the last row of the region
+	 */
+	public void fillMandelbrotRegion(int[][] set, int x0, int y0, int x1,
+	int y1)
+	{
+		calcMandelbrotRegion(set, x0, y0, x1, y1, minReal, maxReal,
+		minImaginary, maxImaginary, maxIterations, sqRadius);
+	}
+
+	/**
+	 * Supersamples the edge pixels of a set of this state, for drawing it
+	 * anti-aliased. A pixel is on an edge when its iteration value differs
+	 * from that of a pixel beside, above or below it by more than threshold.
+	 * The edge pixels are sampled factor by factor, in parallel. Views too
+	 * deep for double precision are not supersampled.
+	 *
+	 * @param set the [yRes][xRes] set of this state
+	 * @param factor the number of samples across and down each edge pixel
+	 * @param threshold the difference in iteration values above which
+	 * neighbouring pixels are on an edge
+	 * @return the set with the supersamples of its edge pixels
+	 * @throws IllegalArgumentException if factor or threshold is negative
+	 */
+	public SupersampledSet supersample(int[][] set, int factor, int threshold)
+	throws IllegalArgumentException
+	{
+		if (factor < 1 || threshold < 0)
+		{
+			throw new IllegalArgumentException("Supersampling factor must be "
+			+ "positive and threshold not negative");
+		}
+		if (factor == 1 || (getDeepZoom() && isDeepZoom()))
+		{
+			return new SupersampledSet(set, 1, new int[0], new int[0]);
+		}
+		boolean[] edge = new boolean[xRes * yRes];
+		int edges = 0;
+		for (int y = 0; y < yRes; y++)
+		{
+			for (int x = 0; x < xRes; x++)
+			{
+				int value = set[y][x];
+				if (x + 1 < xRes && Math.abs(value - set[y][x + 1]) > threshold)
+				{
+					edges += mark(edge, y * xRes + x) + mark(edge, y * xRes + x
+					+ 1);
+				}
+				if (y + 1 < yRes && Math.abs(value - set[y + 1][x]) > threshold)
+				{
+					edges += mark(edge, y * xRes + x) + mark(edge, (y + 1)
+					* xRes + x);
+				}
+			}
+		}
+		int[] edgePixels = new int[edges];
+		for (int pixel = 0, e = 0; e < edges; pixel++)
+		{
+			if (edge[pixel]) edgePixels[e++] = pixel;
+		}
+		int[] samples = new int[edges * factor * factor];
+		calcMandelbrotSupersamples(edgePixels, factor, samples, xRes, yRes,
+		minReal, maxReal, minImaginary, maxImaginary, maxIterations, sqRadius);
+		return new SupersampledSet(set, factor, edgePixels, samples);
+	}
+
+	/**
+	 * Marks a pixel as on an edge.
+	 *
+	 * @return 1 if the pixel was not marked before, otherwise 0
+	 */
+	private static int mark(boolean[] edge, int pixel)
+	{
+		if (edge[pixel]) return 0;
+		edge[pixel] = true;
+		return 1;
+	}
+
+	/**
+	 * Carries on calculating a set of this state's view, calculated to a lower
+	 * maximum iterations, up to this state's maximum iterations. Only the
+	 * pixels which reached the lower maximum are iterated further, from the
+	 * values of Z in the orbit buffer, which are then moved on to match.
+	 * The set is always calculated in double precision.
+	 *
+	 * @param set the set to carry on, updated in place
+	 * @param previousMaxIterations the maximum iterations set was calculated
+	 * to
+	 * @param orbits the values of Z of the pixels which had not escaped
+	 */
+	void continueMandelbrotSet(int[][] set, int previousMaxIterations,
+	OrbitBuffer orbits)
+	{
+		calcMandelbrotSetContinued(set, orbits.getZReal(),
+		orbits.getZImaginary(), orbits.getIterations(), previousMaxIterations,
+		minReal, maxReal, minImaginary, maxImaginary, maxIterations, sqRadius);
+		orbits.setIterations(maxIterations);
+	}
+
+	/**
+	 * Returns the Mandelbrot Set, rendered coarse-to-fine so that a preview
+	 * can be shown before the whole set is known.
+	 * Deep views are rendered in one go, without previews.
+	 *
+	 * @param passListener receives the partly refined set after each coarse
+	 * pass
+	 * @return the Mandelbrot Set as a 2d array
+	 */
+	public int[][] getMandelbrotSetProgressive(Consumer<int[][]> passListener)
+	{
+		if (getDeepZoom() && isDeepZoom())
+		{
+			return getMandelbrotSet();
+		}
+		return calcMandelbrotSetProgressive(xRes, yRes, minReal, maxReal,
+		minImaginary, maxImaginary, maxIterations, sqRadius, passListener);
+	}
+
+	/**
+	 * Returns true if the other Object is a MandelbrotState describing the
+	 * same Mandelbrot Set: the same resolution, maximum iterations, bounds,
+	 * squared radius and render settings. Where either state has precise
+	 * bounds, those are compared too, as deep views can share their double
+	 * bounds.
+	 *
+	 * @param other the Object to compare with
+	 * @return true if other describes the same set
+	 */
+	@Override
+	public boolean equals(Object other)
+	{
+		if (this == other) return true;
+		if (!(other instanceof MandelbrotState)) return false;
+		MandelbrotState that = (MandelbrotState) other;
+		if (xRes != that.xRes || yRes != that.yRes
+		|| maxIterations != that.maxIterations
+		|| Double.compare(minReal, that.minReal) != 0
+		|| Double.compare(maxReal, that.maxReal) != 0
+		|| Double.compare(minImaginary, that.minImaginary) != 0
+		|| Double.compare(maxImaginary, that.maxImaginary) != 0
+		|| Double.compare(sqRadius, that.sqRadius) != 0
+		|| !sameRenderSettings(that))
+		{
+			return false;
+		}
+		if (!hasPreciseBounds() && !that.hasPreciseBounds()) return true;
+		return getCentreReal().compareTo(that.getCentreReal()) == 0
+		&& getCentreImaginary().compareTo(that.getCentreImaginary()) == 0
+		&& getRealSpan().compareTo(that.getRealSpan()) == 0
+		&& getImaginarySpan().compareTo(that.getImaginarySpan()) == 0;
+	}
+
+	/**
+	 * Returns a hash code of the resolution, maximum iterations, bounds,
+	 * squared radius and render settings, consistent with equals.
+	 *
+	 * @return the hash code of this state
+	 */
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(xRes, yRes, maxIterations, minReal, maxReal,
+		minImaginary, maxImaginary, sqRadius, getRenderMode(), getKernel(),
+		getSinglePrecision(), getDeepZoom());
+	}
+
+	/**
+	 * Returns true if another state renders with the same render mode,
+	 * kernel, precision and deep zoom setting, which can change the set of a
+	 * view. The interior checks are left out as they do not change it.
+	 *
+	 * @param other the state to compare with
+	 * @return true if both states render a view to the same set
+	 */
+	boolean sameRenderSettings(MandelbrotState other)
+	{
+		return getRenderMode() == other.getRenderMode()
+		&& getKernel() == other.getKernel()
+		&& getSinglePrecision() == other.getSinglePrecision()
+		&& getDeepZoom() == other.getDeepZoom();
+	}
 }
@@ -0,0 +1,115 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps, for every pixel of a set which had not escaped after its
+ * maximum iterations, the last value of Z. A set can then be calculated to a
+ * higher maximum by carrying on from where it stopped rather than from the
+ * origin. A pixel known never to escape holds NaN, and one which escaped on
+ * exactly the maximum iterations holds positive infinity.
+ *
+ * The values are only meaningful for pixels whose iteration value equals
+ * getIterations(); other pixels escaped and their entries are left as they
+ * were.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class OrbitBuffer
+{
+	/**
+	 * The number of iterations which gave the saved values of Z.
+	 */
+	private int iterations;
+
+	/**
+	 * The real and imaginary components of Z, [yRes][xRes].
+	 */
+	private final double[][] zReal;
+	private final double[][] zImaginary;
+
+	/**
+	 * Constructs an OrbitBuffer with every Z at the origin before any
+	 * iterations.
+	 *
+	 * @param xRes the number of pixels on the x-axis
+	 * @param yRes the number of pixels on the y-axis
+	 */
+	OrbitBuffer(int xRes, int yRes)
+	{
+		zReal = new double[yRes][xRes];
+		zImaginary = new double[yRes][xRes];
+	}
+
+	/**
+	 * Constructs a copy of an OrbitBuffer, which can be carried on without
+	 * changing the original.
+	 *
+	 * @param other the buffer to copy
+	 */
+	OrbitBuffer(OrbitBuffer other)
+	{
+		iterations = other.iterations;
+		zReal = new double[other.zReal.length][];
+		zImaginary = new double[other.zImaginary.length][];
+		for (int y = 0; y < zReal.length; y++)
+		{
+			zReal[y] = other.zReal[y].clone();
+			zImaginary[y] = other.zImaginary[y].clone();
+		}
+	}
+
+	/**
+	 * Returns the number of iterations which gave the saved values of Z.
+	 *
+	 * @return the number of iterations of the saved values
+	 */
+	int getIterations()
+	{
+		return iterations;
+	}
+
+	/**
+	 * Sets the number of iterations which gave the saved values of Z.
+	 *
+	 * @param iterations the number of iterations of the saved values
+	 */
+	void setIterations(int iterations)
+	{
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Returns the real components of Z.
+	 *
+	 * @return the real components of Z, [yRes][xRes]
+	 */
+	double[][] getZReal()
+	{
+		return zReal;
+	}
+
+	/**
+	 * Returns the imaginary components of Z.
+	 *
+	 * @return the imaginary components of Z, [yRes][xRes]
+	 */
+	double[][] getZImaginary()
+	{
+		return zImaginary;
+	}
+
+	/**
+	 * Puts every Z back at the origin before any iterations.
+	 */
+	void reset()
+	{
+		iterations = 0;
+		for (int y = 0; y < zReal.length; y++)
+		{
+			Arrays.fill(zReal[y], 0);
+			Arrays.fill(zImaginary[y], 0);
+		}
+	}
+}
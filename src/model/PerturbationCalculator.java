@@ -0,0 +1,316 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class calculates the Mandelbrot Set of views too deep for doubles, by
+ * perturbation.
+ *
+ * The orbit of one reference point C is calculated in arbitrary precision
+ * using BigDecimal and stored as doubles. Every pixel C + dc is then iterated
+ * as a small double offset d from that orbit, using
+ * d_n+1 = 2 * Z_n * d_n + d_n^2 + dc
+ * which only needs the precision of the offset, not of C itself.
+ *
+ * When Z_n + d_n comes close to 0 compared to Z_n, or the reference escapes
+ * before the pixel does, the offset no longer describes the pixel well. Such
+ * pixels are marked as glitched and calculated again around a new reference
+ * taken from one of them, up to MAX_REFERENCES times.
+ *
+ * Iteration values match the meaning used by MandelbrotCalculator: the number
+ * of iterations until Z escaped the radius, or maxIterations otherwise.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class PerturbationCalculator
+{
+	/**
+	 * The value kept in a pixel which has to be calculated again.
+	 */
+	private static final int GLITCHED = -1;
+
+	/**
+	 * A pixel is glitched when |Z_n + d_n|^2 is smaller than this times
+	 * |Z_n|^2.
+	 */
+	private static final double GLITCH_TOLERANCE = 1e-6;
+
+	/**
+	 * The number of reference orbits tried before the remaining glitched
+	 * pixels are accepted as they are.
+	 */
+	private static final int MAX_REFERENCES = 32;
+
+	/**
+	 * The number of rows calculated by one task.
+	 */
+	private static final int ROWS_PER_TASK = 8;
+
+	private final MandelbrotCalculator settings;
+	private final int xRes;
+	private final int yRes;
+	private final int maxIterations;
+	private final double sqRadius;
+	private final BigDecimal centreReal;
+	private final BigDecimal centreImaginary;
+	private final double realStep;
+	private final double imaginaryStep;
+	private final MathContext mc;
+
+	/**
+	 * The real components of the current reference orbit.
+	 */
+	private double[] refReal;
+
+	/**
+	 * The imaginary components of the current reference orbit.
+	 */
+	private double[] refImaginary;
+
+	/**
+	 * The number of values of the current reference orbit which are known.
+	 */
+	private int refLength;
+
+	/**
+	 * The offset in pixels of the current reference from the centre.
+	 */
+	private double refX;
+	private double refY;
+
+	/**
+	 * Constructs a PerturbationCalculator for the view of a MandelbrotState.
+	 *
+	 * @param state the view to calculate
+	 */
+	PerturbationCalculator(MandelbrotState state)
+	{
+		settings = state;
+		xRes = state.getXRes();
+		yRes = state.getYRes();
+		maxIterations = state.getMaxIterations();
+		sqRadius = state.getSqRadius();
+		centreReal = state.getCentreReal();
+		centreImaginary = state.getCentreImaginary();
+		realStep = state.getRealSpan().doubleValue() / xRes;
+		imaginaryStep = state.getImaginarySpan().doubleValue() / yRes;
+		mc = state.getPrecision();
+	}
+
+	/**
+	 * Calculates the Mandelbrot Set of the view.
+	 *
+	 * @return the 2d array [yRes][xRes] of iteration values
+	 */
+	int[][] calcMandelbrotSet()
+	{
+		int[][] set = new int[yRes][xRes];
+		if (maxIterations <= 0)
+		{
+			// nothing is iterated, as in MandelbrotCalculator
+			return set;
+		}
+		for (int[] row : set)
+		{
+			Arrays.fill(row, GLITCHED);
+		}
+		// the first reference is the centre of the view
+		double x = xRes / 2.0;
+		double y = yRes / 2.0;
+		for (int references = 1; ; references++)
+		{
+			calcReferenceOrbit(x, y);
+			boolean last = references == MAX_REFERENCES;
+			calcGlitchedPixels(set, last);
+			int[] next = findGlitchedPixel(set);
+			if (last || next == null) break;
+			x = next[0];
+			y = next[1];
+		}
+		return set;
+	}
+
+	/**
+	 * Calculates the orbit of the point at the given pixel offset in arbitrary
+	 * precision, keeping it as doubles until it escapes or maxIterations is
+	 * reached.
+	 *
+	 * @param x the horizontal position of the reference in pixels
+	 * @param y the vertical position of the reference in pixels
+	 */
+	private void calcReferenceOrbit(double x, double y)
+	{
+		refX = x;
+		refY = y;
+		BigDecimal cReal = centreReal.add(new BigDecimal((x - xRes / 2.0)
+		* realStep), mc);
+		BigDecimal cImaginary = centreImaginary.add(new BigDecimal((y - yRes
+		/ 2.0) * imaginaryStep), mc);
+		if (refReal == null)
+		{
+			refReal = new double[maxIterations];
+			refImaginary = new double[maxIterations];
+		}
+		BigDecimal zr = BigDecimal.ZERO;
+		BigDecimal zi = BigDecimal.ZERO;
+		refLength = 0;
+		while (refLength < maxIterations)
+		{
+			double r = zr.doubleValue();
+			double i = zi.doubleValue();
+			refReal[refLength] = r;
+			refImaginary[refLength] = i;
+			refLength++;
+			if (r * r + i * i > sqRadius) break;
+			if (refLength % 1024 == 0) settings.checkCancelled();
+			// Z^2 + C = (zr^2 - zi^2 + cr) + i(2 * zr * zi + ci)
+			BigDecimal zr2 = zr.multiply(zr, mc);
+			BigDecimal zi2 = zi.multiply(zi, mc);
+			BigDecimal nzi = zr.multiply(zi, mc).multiply(BigDecimal.valueOf(2))
+			.add(cImaginary, mc);
+			zr = zr2.subtract(zi2).add(cReal, mc);
+			zi = nzi;
+		}
+	}
+
+	/**
+	 * Calculates every glitched pixel of the set around the current reference
+	 * orbit, on the render pool.
+	 *
+	 * @param set the set being calculated
+	 * @param last true if pixels should be accepted even if they glitch
+	 */
+	private void calcGlitchedPixels(int[][] set, boolean last)
+	{
+		RowTask task = new RowTask(set, 0, yRes, last);
+		ForkJoinPool pool = settings.getRenderPool();
+		if (pool.getParallelism() > 1)
+		{
+			pool.invoke(task);
+		}
+		else
+		{
+			task.compute();
+		}
+	}
+
+	/**
+	 * Returns the position of the glitched pixel to use as the next
+	 * reference, chosen as the middle one in row order.
+	 *
+	 * @param set the set being calculated
+	 * @return {x, y} of a glitched pixel, or null if there are none
+	 */
+	private int[] findGlitchedPixel(int[][] set)
+	{
+		int count = 0;
+		for (int[] row : set)
+		{
+			for (int value : row)
+			{
+				if (value == GLITCHED) count++;
+			}
+		}
+		if (count == 0) return null;
+		int target = count / 2;
+		for (int j = 0; j < yRes; j++)
+		{
+			for (int i = 0; i < xRes; i++)
+			{
+				if (set[j][i] == GLITCHED && target-- == 0)
+				{
+					return new int[] {i, j};
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Iterates the offset of a pixel from the current reference orbit.
+	 *
+	 * @param dcr the real offset of the pixel's C from the reference's C
+	 * @param dci the imaginary offset of the pixel's C from the reference's C
+	 * @param last true if the pixel should be accepted even if it glitches
+	 * @return the iteration value of the pixel, or GLITCHED
+	 */
+	private int calcPixel(double dcr, double dci, boolean last)
+	{
+		double dr = 0;
+		double di = 0;
+		for (int n = 0; n < maxIterations; n++)
+		{
+			if (n >= refLength)
+			{
+				// the reference escaped before this pixel
+				return last ? n : GLITCHED;
+			}
+			double zr = refReal[n];
+			double zi = refImaginary[n];
+			double fr = zr + dr;
+			double fi = zi + di;
+			double mag = fr * fr + fi * fi;
+			if (mag > sqRadius) return n + 1;
+			if (!last && mag < GLITCH_TOLERANCE * (zr * zr + zi * zi))
+			{
+				return GLITCHED;
+			}
+			double ndr = 2 * (zr * dr - zi * di) + dr * dr - di * di + dcr;
+			double ndi = 2 * (zr * di + zi * dr) + 2 * dr * di + dci;
+			dr = ndr;
+			di = ndi;
+		}
+		return maxIterations;
+	}
+
+	/**
+	 * A fork-join task which calculates the glitched pixels of a range of
+	 * rows.
+	 */
+	private class RowTask extends RecursiveAction
+	{
+		private final int[][] set;
+		private final int y0;
+		private final int y1;
+		private final boolean last;
+
+		RowTask(int[][] set, int y0, int y1, boolean last)
+		{
+			this.set = set;
+			this.y0 = y0;
+			this.y1 = y1;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute()
+		{
+			// rows are only split when running on the render pool
+			if (y1 - y0 > ROWS_PER_TASK && inForkJoinPool())
+			{
+				int mid = (y0 + y1) / 2;
+				invokeAll(new RowTask(set, y0, mid, last),
+				new RowTask(set, mid, y1, last));
+				return;
+			}
+			for (int j = y0; j < y1; j++)
+			{
+				settings.checkCancelled();
+				double dci = (j - refY) * imaginaryStep;
+				int[] row = set[j];
+				for (int i = 0; i < xRes; i++)
+				{
+					if (row[i] == GLITCHED)
+					{
+						row[i] = calcPixel((i - refX) * realStep, dci, last);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps recently rendered Mandelbrot Sets, keyed by the
+ * MandelbrotState they were rendered from, so that going back to a view
+ * (by undo, redo or reset) does not render it again.
+ *
+ * The cache holds at most a given number of bytes of sets, evicting the
+ * least recently used set first. The states themselves still store no
+ * pixels; only the sets in the cache take memory, and only up to the budget.
+ * Sets are kept as CompressedFrames, which typically take a fifth to a
+ * tenth of the memory of the int[][] they were made from, and are decoded
+ * again when looked up.
+ *
+ * All methods are thread safe, so renders on different threads can share
+ * one cache.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class RenderCache
+{
+	/**
+	 * The sets in the cache, from least to most recently used.
+	 */
+	private final LinkedHashMap<MandelbrotState, CompressedFrame> sets;
+
+	/**
+	 * The most bytes of sets the cache holds.
+	 */
+	private long budget;
+
+	/**
+	 * The bytes of sets the cache holds now.
+	 */
+	private long size;
+
+	/**
+	 * The number of lookups which found, or did not find, a set.
+	 */
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructs an empty RenderCache.
+	 *
+	 * @param budget the most bytes of sets to hold
+	 * @throws IllegalArgumentException if budget is negative
+	 */
+	RenderCache(long budget) throws IllegalArgumentException
+	{
+		sets = new LinkedHashMap<>(16, 0.75f, true);
+		setBudget(budget);
+	}
+
+	/**
+	 * Returns the set rendered from a state, marking it as recently used.
+	 *
+	 * @param state the state to look up
+	 * @return a new copy of the set of the state, or null if it is not in
+	 * the cache
+	 */
+	int[][] get(MandelbrotState state)
+	{
+		CompressedFrame frame;
+		synchronized (this)
+		{
+			frame = sets.get(state);
+			if (frame == null)
+			{
+				misses++;
+			}
+			else
+			{
+				hits++;
+			}
+		}
+		// frames never change, so they are decoded outside the lock
+		return frame == null ? null : frame.decode();
+	}
+
+	/**
+	 * Returns whether the set rendered from a state is in the cache, without
+	 * counting a lookup or marking it as recently used.
+	 *
+	 * @param state the state to look up
+	 * @return true if the set of the state is in the cache
+	 */
+	synchronized boolean contains(MandelbrotState state)
+	{
+		return sets.containsKey(state);
+	}
+
+	/**
+	 * Adds the set rendered from a state, evicting the least recently used
+	 * sets until the cache is within its budget. A set bigger than the whole
+	 * budget is not kept.
+	 * The state is copied, so changing it later does not affect the cache.
+	 * The set is compressed, so changing it later does not affect the cache
+	 * either.
+	 *
+	 * @param state the state the set was rendered from
+	 * @param set the set to keep
+	 */
+	void put(MandelbrotState state, int[][] set)
+	{
+		if (getBudget() == 0) return;
+		CompressedFrame frame = new CompressedFrame(set);
+		synchronized (this)
+		{
+			if (frame.getSize() > budget) return;
+			CompressedFrame replaced = sets.put(new MandelbrotState(state),
+			frame);
+			if (replaced != null) size -= replaced.getSize();
+			size += frame.getSize();
+			evict();
+		}
+	}
+
+	/**
+	 * Returns the most bytes of sets the cache holds.
+	 *
+	 * @return the budget in bytes
+	 */
+	synchronized long getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * Sets the most bytes of sets the cache holds, evicting sets if it now
+	 * holds more. A budget of 0 turns the cache off.
+	 *
+	 * @param budget the budget in bytes
+	 * @throws IllegalArgumentException if budget is negative
+	 */
+	synchronized void setBudget(long budget) throws IllegalArgumentException
+	{
+		if (budget < 0)
+		{
+			throw new IllegalArgumentException("Cache budget must not be "
+			+ "negative");
+		}
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * Returns the bytes of sets the cache holds now.
+	 *
+	 * @return the size in bytes
+	 */
+	synchronized long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the number of lookups which found a set.
+	 *
+	 * @return the number of hits
+	 */
+	synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups which did not find a set.
+	 *
+	 * @return the number of misses
+	 */
+	synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Removes the least recently used sets until the cache is within its
+	 * budget.
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<MandelbrotState, CompressedFrame>> eldest =
+		sets.entrySet().iterator();
+		while (size > budget && eldest.hasNext())
+		{
+			size -= eldest.next().getValue().getSize();
+			eldest.remove();
+		}
+	}
+}
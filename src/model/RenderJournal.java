@@ -0,0 +1,348 @@
+package model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps a checkpoint file of the finished regions of a long
+ * render, so that a render stopped by a crash or on purpose can carry on
+ * from where it stopped instead of starting again.
+ *
+ * The file starts with a header describing the render: the view's bounds,
+ * maximum iterations and squared radius, the kernel and precision it is
+ * calculated with, and the size of the image, with a CRC32 checksum. A
+ * header cut short or failing its check, as one written during a crash may
+ * be, holds no checkpoint, and the file is started again. Opening the file
+ * for a different render fails rather than losing its work. Each finished
+ * region is then appended as a record
+ * holding its position, a CRC32 checksum and its iteration values, and the
+ * file is forced to disk before the next region is started, so at most the
+ * region in progress is lost.
+ *
+ * When the file is opened every record is checked against its checksum.
+ * The first record cut short or failing its check, as the last record
+ * written before a crash may be, is dropped with everything after it, and
+ * is calculated again.
+ *
+ * Only the positions of the records are held in memory; their values are
+ * read back from the file when asked for. All methods are synchronized.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+public class RenderJournal implements Closeable
+{
+	/**
+	 * The width and height of the regions getMandelbrotSetCheckpointed
+	 * journals.
+	 */
+	public static final int TILE_SIZE = 256;
+
+	/**
+	 * The first four bytes of the file, and of every record.
+	 */
+	private static final int MAGIC = 0x4d524a31;
+	private static final int RECORD_MAGIC = 0x4d524a52;
+
+	/**
+	 * The bytes of a record before its iteration values: magic, x, y, width,
+	 * height and checksum.
+	 */
+	private static final int RECORD_HEADER_BYTES = 6 * 4;
+
+	private final FileChannel channel;
+
+	/**
+	 * The offset of the values of every region in the file.
+	 */
+	private final Map<Region, Long> offsets;
+
+	/**
+	 * The length of the file, where the next record is appended.
+	 */
+	private long end;
+
+	/**
+	 * Opens the checkpoint file of a render, creating it if needed.
+	 *
+	 * @param file the checkpoint file
+	 * @param view the view being rendered
+	 * @param width the width of the image in pixels
+	 * @param height the height of the image in pixels
+	 * @throws IOException if the file cannot be opened, or is the checkpoint
+	 * of a different render
+	 */
+	public RenderJournal(Path file, MandelbrotState view, int width,
+	int height) throws IOException
+	{
+		channel = FileChannel.open(file, StandardOpenOption.CREATE,
+		StandardOpenOption.READ, StandardOpenOption.WRITE);
+		offsets = new HashMap<>();
+		try
+		{
+			byte[] description = describe(view, width, height).getBytes(
+			StandardCharsets.UTF_8);
+			if (!checkHeader(file, description))
+			{
+				channel.truncate(0);
+				writeHeader(description);
+			}
+			scan();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the description of a render which must match the header.
+	 */
+	private static String describe(MandelbrotState view, int width,
+	int height)
+	{
+		return width + "x" + height + " " + view.getCentreReal() + " "
+		+ view.getCentreImaginary() + " " + view.getRealSpan() + " "
+		+ view.getImaginarySpan() + " " + view.getMaxIterations() + " "
+		+ view.getSqRadius() + " " + view.getKernel() + " "
+		+ view.getSinglePrecision();
+	}
+
+	/**
+	 * Writes the header: magic, length of the description, the description
+	 * and its checksum.
+	 */
+	private void writeHeader(byte[] description) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(12 + description.length);
+		header.putInt(MAGIC).putInt(description.length).put(description)
+		.putInt(checksum(description));
+		header.flip();
+		write(header, 0);
+		channel.force(false);
+		end = header.limit();
+	}
+
+	/**
+	 * Checks the header is whole and describes this render.
+	 *
+	 * @return false if the file is empty, or its header is cut short or
+	 * damaged, so that it holds no checkpoint
+	 * @throws IOException if the header describes another render
+	 */
+	private boolean checkHeader(Path file, byte[] description)
+	throws IOException
+	{
+		long size = channel.size();
+		if (size < 12) return false;
+		ByteBuffer start = read(0, 8);
+		int length = start.getInt(4);
+		if (start.getInt(0) != MAGIC || length < 0 || 12L + length > size)
+		{
+			return false;
+		}
+		ByteBuffer header = read(8, length + 4);
+		byte[] found = new byte[length];
+		header.get(found);
+		if (header.getInt() != checksum(found)) return false;
+		if (!new String(found, StandardCharsets.UTF_8).equals(new String(
+		description, StandardCharsets.UTF_8)))
+		{
+			throw new IOException(file + " is the checkpoint of another "
+			+ "render");
+		}
+		end = 12 + length;
+		return true;
+	}
+
+	/**
+	 * Finds the records after the header, dropping the first damaged record
+	 * and everything after it.
+	 */
+	private void scan() throws IOException
+	{
+		long size = channel.size();
+		while (end + RECORD_HEADER_BYTES <= size)
+		{
+			ByteBuffer header = read(end, RECORD_HEADER_BYTES);
+			int x = header.getInt(4);
+			int y = header.getInt(8);
+			int width = header.getInt(12);
+			int height = header.getInt(16);
+			long bytes = 4L * width * height;
+			if (header.getInt(0) != RECORD_MAGIC || width <= 0 || height <= 0
+			|| bytes > Integer.MAX_VALUE
+			|| end + RECORD_HEADER_BYTES + bytes > size)
+			{
+				break;
+			}
+			ByteBuffer values = read(end + RECORD_HEADER_BYTES, (int) bytes);
+			if (checksum(values) != header.getInt(20)) break;
+			offsets.put(new Region(x, y, width, height), end
+			+ RECORD_HEADER_BYTES);
+			end += RECORD_HEADER_BYTES + bytes;
+		}
+		if (size > end) channel.truncate(end);
+	}
+
+	/**
+	 * Returns the number of regions in the journal.
+	 *
+	 * @return the number of finished regions
+	 */
+	public synchronized int getRegionCount()
+	{
+		return offsets.size();
+	}
+
+	/**
+	 * Returns the values of a finished region.
+	 *
+	 * @param x the left column of the region
+	 * @param y the top row of the region
+	 * @param width the number of columns of the region
+	 * @param height the number of rows of the region
+	 * @return the iteration values of the region, row after row, or null if
+	 * it has not been finished
+	 * @throws IOException if the file cannot be read
+	 */
+	public synchronized int[] get(int x, int y, int width, int height)
+	throws IOException
+	{
+		Long offset = offsets.get(new Region(x, y, width, height));
+		if (offset == null) return null;
+		int[] values = new int[width * height];
+		read(offset, 4 * values.length).asIntBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * Appends a finished region, forcing it to disk.
+	 *
+	 * @param x the left column of the region
+	 * @param y the top row of the region
+	 * @param width the number of columns of the region
+	 * @param height the number of rows of the region
+	 * @param values the iteration values of the region, row after row
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void put(int x, int y, int width, int height,
+	int[] values) throws IOException
+	{
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + 4
+		* width * height);
+		record.position(RECORD_HEADER_BYTES);
+		record.asIntBuffer().put(values, 0, width * height);
+		record.position(RECORD_HEADER_BYTES);
+		int crc = checksum(record);
+		record.position(0);
+		record.putInt(RECORD_MAGIC).putInt(x).putInt(y).putInt(width)
+		.putInt(height).putInt(crc);
+		record.position(0);
+		write(record, end);
+		channel.force(false);
+		offsets.put(new Region(x, y, width, height), end
+		+ RECORD_HEADER_BYTES);
+		end += record.limit();
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * Reads bytes from a position of the file.
+	 */
+	private ByteBuffer read(long position, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer, position + buffer.position()) < 0)
+			{
+				throw new EOFException("Checkpoint file cut short");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Writes the whole of a buffer at a position of the file.
+	 */
+	private void write(ByteBuffer buffer, long position) throws IOException
+	{
+		long start = position - buffer.position();
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer, start + buffer.position());
+		}
+	}
+
+	/**
+	 * Returns the CRC32 checksum of bytes.
+	 */
+	private static int checksum(byte[] bytes)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Returns the CRC32 checksum of the remaining bytes of a buffer, leaving
+	 * its position where it was.
+	 */
+	private static int checksum(ByteBuffer bytes)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(bytes.duplicate());
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * The position and size of a region of the image.
+	 */
+	private static final class Region
+	{
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int height;
+
+		Region(int x, int y, int width, int height)
+		{
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof Region)) return false;
+			Region that = (Region) other;
+			return x == that.x && y == that.y && width == that.width
+			&& height == that.height;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ((x * 31 + y) * 31 + width) * 31 + height;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package model;
+
+/**
+ * This class holds a Mandelbrot Set together with supersamples of its edge
+ * pixels, for drawing it anti-aliased.
+ *
+ * Only the pixels on an edge, where the iteration values of neighbouring
+ * pixels differ by more than a threshold, are supersampled; every other
+ * pixel is drawn from its single value. An edge pixel is drawn as the
+ * average color of its factor * factor samples.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+public final class SupersampledSet
+{
+	/**
+	 * The default number of samples across and down each edge pixel.
+	 */
+	public static final int DEFAULT_FACTOR = 3;
+
+	/**
+	 * The default difference in iteration values between neighbouring pixels
+	 * above which both are on an edge.
+	 */
+	public static final int DEFAULT_THRESHOLD = 2;
+
+	private final int[][] set;
+	private final int factor;
+
+	/**
+	 * The edge pixels, each given as y * width + x, in increasing order.
+	 */
+	private final int[] edgePixels;
+
+	/**
+	 * The factor * factor samples of each edge pixel, in the order of
+	 * edgePixels, and row by row within each pixel.
+	 */
+	private final int[] samples;
+
+	/**
+	 * Constructs a SupersampledSet.
+	 *
+	 * @param set the set, [height][width]
+	 * @param factor the number of samples across and down each edge pixel
+	 * @param edgePixels the edge pixels, each given as y * width + x, in
+	 * increasing order
+	 * @param samples the factor * factor samples of each edge pixel
+	 */
+	SupersampledSet(int[][] set, int factor, int[] edgePixels, int[] samples)
+	{
+		this.set = set;
+		this.factor = factor;
+		this.edgePixels = edgePixels;
+		this.samples = samples;
+	}
+
+	/**
+	 * Returns the set, with one value per pixel.
+	 *
+	 * @return the set, [height][width]
+	 */
+	public int[][] getSet()
+	{
+		return set;
+	}
+
+	/**
+	 * Returns the number of samples across and down each edge pixel.
+	 *
+	 * @return the supersampling factor
+	 */
+	public int getFactor()
+	{
+		return factor;
+	}
+
+	/**
+	 * Returns the number of edge pixels which were supersampled.
+	 *
+	 * @return the number of edge pixels
+	 */
+	public int getEdgeCount()
+	{
+		return edgePixels.length;
+	}
+
+	/**
+	 * Returns an edge pixel.
+	 *
+	 * @param edge the number of the edge pixel, from 0 to getEdgeCount() - 1
+	 * @return the pixel, given as y * width + x
+	 */
+	public int getEdgePixel(int edge)
+	{
+		return edgePixels[edge];
+	}
+
+	/**
+	 * Returns a sample of an edge pixel.
+	 *
+	 * @param edge the number of the edge pixel, from 0 to getEdgeCount() - 1
+	 * @param sample the number of the sample, from 0 to factor * factor - 1,
+	 * row by row within the pixel
+	 * @return the iteration value of the sample
+	 */
+	public int getSample(int edge, int sample)
+	{
+		return samples[edge * factor * factor + sample];
+	}
+}
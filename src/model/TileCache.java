@@ -0,0 +1,421 @@
+package model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps tiles of the Mandelbrot Set on a fixed grid in the complex
+ * plane, so that any view of an area calculated before, at the same zoom
+ * level, can be put together from tiles instead of calculated again.
+ *
+ * At zoom level L the complex plane is divided into world pixels 2^L wide,
+ * the world pixel (m, n) lying at C = m * 2^L + n * 2^L * i, and into tiles
+ * of TILE_SIZE by TILE_SIZE world pixels. Every tile is identified by its
+ * level, its position on the grid and the maximum iterations, squared
+ * radius, kernel and precision it was calculated with, so a tile is never
+ * reused by a render which would have calculated it differently.
+ *
+ * The cache holds at most a given number of bytes of tiles, dropping the
+ * least recently used tiles first. It may sit on a TileStore, which keeps
+ * every tile added on disk so that tiles dropped from memory, or calculated
+ * in an earlier run, are read back instead of calculated. It may be read and filled by several
+ * render threads at once; two threads needing the same missing tile may
+ * both calculate it, the second result replacing the first.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class TileCache
+{
+	/**
+	 * The width and height of a tile in world pixels.
+	 */
+	static final int TILE_SIZE = 64;
+
+	/**
+	 * The number of bytes a tile takes, roughly.
+	 */
+	private static final long TILE_BYTES = 16 + TILE_SIZE * (20L + 4
+	* TILE_SIZE);
+
+	/**
+	 * The fraction of the budget the cache is brought down to when it goes
+	 * over, so that eviction is not needed again for every new tile.
+	 */
+	private static final double EVICT_TO = 0.9;
+
+	private final Map<Key, Entry> tiles;
+
+	/**
+	 * Counts uses of tiles, to find the least recently used.
+	 */
+	private final AtomicLong clock;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * The most bytes of tiles the cache holds.
+	 */
+	private volatile long budget;
+
+	/**
+	 * The store on disk beneath the cache, or null.
+	 */
+	private volatile TileStore store;
+
+	/**
+	 * Constructs an empty TileCache.
+	 *
+	 * @param budget the most bytes of tiles to hold
+	 * @throws IllegalArgumentException if budget is negative
+	 */
+	TileCache(long budget) throws IllegalArgumentException
+	{
+		tiles = new ConcurrentHashMap<>();
+		clock = new AtomicLong();
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+		setBudget(budget);
+	}
+
+	/**
+	 * Returns a tile, marking it as recently used.
+	 *
+	 * @param key the tile to look up
+	 * @return the [TILE_SIZE][TILE_SIZE] iteration values of the tile, or
+	 * null if it is not in the cache
+	 */
+	int[][] get(Key key)
+	{
+		Entry entry = tiles.get(key);
+		if (entry == null)
+		{
+			TileStore disk = store;
+			int[][] tile = disk == null ? null : disk.get(key);
+			if (tile == null)
+			{
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			addToMemory(key, tile);
+			return tile;
+		}
+		hits.incrementAndGet();
+		entry.lastUsed = clock.incrementAndGet();
+		return entry.tile;
+	}
+
+	/**
+	 * Adds a tile, dropping the least recently used tiles if the cache goes
+	 * over its budget. The tile must not be changed after it is added.
+	 *
+	 * @param key the tile
+	 * @param tile the [TILE_SIZE][TILE_SIZE] iteration values of the tile
+	 */
+	void put(Key key, int[][] tile)
+	{
+		addToMemory(key, tile);
+		TileStore disk = store;
+		if (disk != null)
+		{
+			try
+			{
+				disk.put(key, tile);
+			}
+			catch (IOException e)
+			{
+				/* a store which cannot be written is given up, and the cache
+				carries on in memory; renders are not failed for it */
+				setStore(null);
+			}
+		}
+	}
+
+	/**
+	 * Returns the store on disk beneath the cache.
+	 *
+	 * @return the store, or null if tiles are only kept in memory
+	 */
+	TileStore getStore()
+	{
+		return store;
+	}
+
+	/**
+	 * Sets the store on disk beneath the cache, closing the previous one.
+	 *
+	 * @param store the store, or null to keep tiles only in memory
+	 */
+	synchronized void setStore(TileStore store)
+	{
+		TileStore previous = this.store;
+		this.store = store;
+		if (previous != null && previous != store)
+		{
+			try
+			{
+				previous.close();
+			}
+			catch (IOException e)
+			{
+				// nothing more is written to it either way
+			}
+		}
+	}
+
+	/**
+	 * Adds a tile to memory only, dropping the least recently used tiles if
+	 * the cache goes over its budget.
+	 */
+	private void addToMemory(Key key, int[][] tile)
+	{
+		if (budget < TILE_BYTES) return;
+		tiles.put(key, new Entry(tile, clock.incrementAndGet()));
+		if (getSize() > budget) evict();
+	}
+
+	/**
+	 * Returns the most bytes of tiles the cache holds.
+	 *
+	 * @return the budget in bytes
+	 */
+	long getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * Sets the most bytes of tiles the cache holds, dropping tiles if it now
+	 * holds more. A budget smaller than one tile turns the cache off.
+	 *
+	 * @param budget the budget in bytes
+	 * @throws IllegalArgumentException if budget is negative
+	 */
+	void setBudget(long budget) throws IllegalArgumentException
+	{
+		if (budget < 0)
+		{
+			throw new IllegalArgumentException("Cache budget must not be "
+			+ "negative");
+		}
+		this.budget = budget;
+		if (getSize() > budget) evict();
+	}
+
+	/**
+	 * Returns the bytes of tiles the cache holds now.
+	 *
+	 * @return the size in bytes
+	 */
+	long getSize()
+	{
+		return tiles.size() * TILE_BYTES;
+	}
+
+	/**
+	 * Returns the number of lookups which found a tile.
+	 *
+	 * @return the number of hits
+	 */
+	long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups which did not find a tile.
+	 *
+	 * @return the number of misses
+	 */
+	long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Drops the least recently used tiles until the cache holds EVICT_TO of
+	 * its budget. Only one thread evicts at a time; the others carry on.
+	 */
+	private synchronized void evict()
+	{
+		if (getSize() <= budget) return;
+		int keep = (int) Math.min((long) (budget * EVICT_TO) / TILE_BYTES,
+		Integer.MAX_VALUE);
+		List<Map.Entry<Key, Entry>> entries = new ArrayList<>(tiles.entrySet());
+		if (entries.size() <= keep) return;
+		// the uses are read once, as other threads may use tiles meanwhile
+		long[] lastUsed = new long[entries.size()];
+		for (int e = 0; e < lastUsed.length; e++)
+		{
+			lastUsed[e] = entries.get(e).getValue().lastUsed;
+		}
+		long[] sorted = lastUsed.clone();
+		Arrays.sort(sorted);
+		long newestDropped = sorted[sorted.length - keep - 1];
+		for (int e = 0; e < lastUsed.length; e++)
+		{
+			if (lastUsed[e] <= newestDropped)
+			{
+				Map.Entry<Key, Entry> entry = entries.get(e);
+				tiles.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * The identity of a tile: its zoom level, its position on the grid of
+	 * tiles, and the maximum iterations, squared radius, kernel and
+	 * precision of its values.
+	 */
+	static final class Key
+	{
+		private final int level;
+		private final long tileX;
+		private final long tileY;
+		private final int maxIterations;
+		private final double sqRadius;
+		private final int kernel;
+		private final boolean singlePrecision;
+
+		/**
+		 * Constructs the Key of a tile.
+		 *
+		 * @param level the zoom level, world pixels being 2^level wide
+		 * @param tileX the horizontal position of the tile on the grid
+		 * @param tileY the vertical position of the tile on the grid
+		 * @param maxIterations the maximum iterations of the tile's values
+		 * @param sqRadius the squared radius of the tile's values
+		 * @param kernel the kernel the tile's values are calculated with
+		 * @param singlePrecision true if the tile's values may be calculated
+		 * in single precision
+		 */
+		Key(int level, long tileX, long tileY, int maxIterations,
+		double sqRadius, int kernel, boolean singlePrecision)
+		{
+			this.level = level;
+			this.tileX = tileX;
+			this.tileY = tileY;
+			this.maxIterations = maxIterations;
+			this.sqRadius = sqRadius;
+			this.kernel = kernel;
+			this.singlePrecision = singlePrecision;
+		}
+
+		/**
+		 * Returns the zoom level of the tile.
+		 *
+		 * @return the level, world pixels being 2^level wide
+		 */
+		int getLevel()
+		{
+			return level;
+		}
+
+		/**
+		 * Returns the horizontal position of the tile on the grid.
+		 *
+		 * @return the tile's x position in tiles
+		 */
+		long getTileX()
+		{
+			return tileX;
+		}
+
+		/**
+		 * Returns the vertical position of the tile on the grid.
+		 *
+		 * @return the tile's y position in tiles
+		 */
+		long getTileY()
+		{
+			return tileY;
+		}
+
+		/**
+		 * Returns the maximum iterations of the tile's values.
+		 *
+		 * @return the maximum iterations
+		 */
+		int getMaxIterations()
+		{
+			return maxIterations;
+		}
+
+		/**
+		 * Returns the squared radius of the tile's values.
+		 *
+		 * @return the squared radius
+		 */
+		double getSqRadius()
+		{
+			return sqRadius;
+		}
+
+		/**
+		 * Returns the kernel the tile's values are calculated with.
+		 *
+		 * @return MandelbrotCalculator.SCALAR_KERNEL or BATCHED_KERNEL
+		 */
+		int getKernel()
+		{
+			return kernel;
+		}
+
+		/**
+		 * Returns whether the tile's values may be calculated in single
+		 * precision.
+		 *
+		 * @return true if single precision was allowed
+		 */
+		boolean getSinglePrecision()
+		{
+			return singlePrecision;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof Key)) return false;
+			Key that = (Key) other;
+			return level == that.level && tileX == that.tileX
+			&& tileY == that.tileY && maxIterations == that.maxIterations
+			&& Double.compare(sqRadius, that.sqRadius) == 0
+			&& kernel == that.kernel
+			&& singlePrecision == that.singlePrecision;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = level;
+			hash = 31 * hash + Long.hashCode(tileX);
+			hash = 31 * hash + Long.hashCode(tileY);
+			hash = 31 * hash + maxIterations;
+			hash = 31 * hash + Double.hashCode(sqRadius);
+			hash = 31 * hash + kernel;
+			return 31 * hash + Boolean.hashCode(singlePrecision);
+		}
+	}
+
+	/**
+	 * A tile in the cache and when it was last used.
+	 */
+	private static final class Entry
+	{
+		private final int[][] tile;
+		private volatile long lastUsed;
+
+		Entry(int[][] tile, long lastUsed)
+		{
+			this.tile = tile;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
@@ -0,0 +1,539 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps tiles of the TileCache on disk, so that tiles calculated
+ * in one run of the program are not calculated again in the next.
+ *
+ * Tiles are appended to a data file, each as a record holding its key, a
+ * CRC32 checksum and its iteration values, and are read back through a
+ * memory mapping of the file. A separate index file lists the key and
+ * offset of every record, so the data file need not be scanned on opening.
+ *
+ * Writes are crash-safe in the sense that a crash never makes the store
+ * return a wrong tile: a record is only listed in the index after it is
+ * written, every record is checked against its checksum when read, records
+ * appended but not indexed are found again when the store is opened, and a
+ * record cut short is dropped.
+ *
+ * When the data file grows past the size cap, it is compacted: the most
+ * recently used half of the tiles are copied to a new file, which then
+ * replaces the old one.
+ *
+ * A lock on a lock file is held while the store is open, so that only one
+ * program uses the store at a time; opening a store in use fails.
+ *
+ * All methods are synchronized, so the store may be used by several render
+ * threads at once.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+class TileStore implements Closeable
+{
+	/**
+	 * The first four bytes of every record.
+	 */
+	private static final int MAGIC = 0x4d544c32;
+
+	/**
+	 * The bytes of a record before its iteration values: magic, level, tile
+	 * x, tile y, maximum iterations, squared radius, kernel, precision and
+	 * checksum.
+	 */
+	private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 8 + 4 + 4 + 4;
+
+	/**
+	 * The bytes of a whole record.
+	 */
+	private static final int RECORD_BYTES = HEADER_BYTES + 4
+	* TileCache.TILE_SIZE * TileCache.TILE_SIZE;
+
+	/**
+	 * The bytes of an index entry: the key and the offset of its record.
+	 */
+	private static final int INDEX_BYTES = 4 + 8 + 8 + 4 + 8 + 4 + 4 + 8;
+
+	private final Path dataPath;
+	private final Path indexPath;
+	private final long cap;
+
+	/**
+	 * The lock file, whose lock is held until the store is closed.
+	 */
+	private final FileChannel lockFile;
+
+	private FileChannel data;
+	private FileChannel index;
+
+	/**
+	 * A read-only mapping of the data file, remapped as the file grows.
+	 */
+	private MappedByteBuffer mapped;
+
+	/**
+	 * The offset of every tile's record in the data file and when it was last
+	 * used.
+	 */
+	private final Map<TileCache.Key, long[]> offsets;
+
+	/**
+	 * The length of the data file, where the next record is appended.
+	 */
+	private long dataEnd;
+
+	/**
+	 * Counts uses of tiles, to find the least recently used.
+	 */
+	private long clock;
+
+	/**
+	 * Opens the store in a directory, creating it if needed.
+	 *
+	 * @param directory the directory to keep the data and index files in
+	 * @param cap the size in bytes past which the data file is compacted
+	 * @throws IOException if the files cannot be opened, or the store is in
+	 * use
+	 * @throws IllegalArgumentException if cap is smaller than two tiles
+	 */
+	TileStore(Path directory, long cap) throws IOException,
+	IllegalArgumentException
+	{
+		if (cap < 2L * RECORD_BYTES)
+		{
+			throw new IllegalArgumentException("Tile store cap must hold at "
+			+ "least two tiles");
+		}
+		Files.createDirectories(directory);
+		dataPath = directory.resolve("tiles.dat");
+		indexPath = directory.resolve("tiles.idx");
+		this.cap = cap;
+		offsets = new HashMap<>();
+		lockFile = FileChannel.open(directory.resolve("tiles.lock"),
+		StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try
+		{
+			FileLock lock = null;
+			try
+			{
+				lock = lockFile.tryLock();
+			}
+			catch (OverlappingFileLockException e)
+			{
+				// the lock is held by this program, through another store
+			}
+			if (lock == null)
+			{
+				throw new IOException("Tile store " + directory + " is in use");
+			}
+			open();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			closeFiles();
+			lockFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a tile, marking it as recently used.
+	 *
+	 * @param key the tile to look up
+	 * @return the iteration values of the tile, or null if it is not stored
+	 * or its record is damaged
+	 */
+	synchronized int[][] get(TileCache.Key key)
+	{
+		long[] location = offsets.get(key);
+		if (location == null || data == null) return null;
+		int[][] tile = readRecord(location[0], key);
+		if (tile == null)
+		{
+			offsets.remove(key);
+			return null;
+		}
+		location[1] = ++clock;
+		return tile;
+	}
+
+	/**
+	 * Appends a tile, unless it is stored already, compacting the data file
+	 * if it grows past the cap.
+	 *
+	 * @param key the tile
+	 * @param tile the iteration values of the tile
+	 * @throws IOException if the tile cannot be written
+	 */
+	synchronized void put(TileCache.Key key, int[][] tile) throws IOException
+	{
+		if (data == null || offsets.containsKey(key)) return;
+		ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+		record.putInt(MAGIC).putInt(key.getLevel()).putLong(key.getTileX())
+		.putLong(key.getTileY()).putInt(key.getMaxIterations())
+		.putDouble(key.getSqRadius()).putInt(key.getKernel())
+		.putInt(key.getSinglePrecision() ? 1 : 0).putInt(0);
+		for (int[] row : tile)
+		{
+			for (int value : row)
+			{
+				record.putInt(value);
+			}
+		}
+		record.putInt(HEADER_BYTES - 4, checksum(record));
+		record.flip();
+		writeFully(data, record, dataEnd);
+		// the record is complete before the index lists it
+		appendIndex(key, dataEnd);
+		offsets.put(key, new long[] {dataEnd, ++clock});
+		dataEnd += RECORD_BYTES;
+		if (dataEnd > cap) compact();
+	}
+
+	/**
+	 * Returns the number of tiles in the store.
+	 *
+	 * @return the number of tiles
+	 */
+	synchronized int size()
+	{
+		return offsets.size();
+	}
+
+	/**
+	 * Closes the data and index files, and gives up the lock on the store.
+	 *
+	 * @throws IOException if the files cannot be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		try
+		{
+			closeFiles();
+		}
+		finally
+		{
+			lockFile.close();
+		}
+	}
+
+	/**
+	 * Closes the data and index files, keeping the lock.
+	 */
+	private void closeFiles() throws IOException
+	{
+		if (data == null) return;
+		try
+		{
+			data.close();
+		}
+		finally
+		{
+			if (index != null) index.close();
+			data = null;
+			index = null;
+			mapped = null;
+		}
+	}
+
+	/**
+	 * Opens the data and index files, reads the index, and finds any records
+	 * appended after the last indexed one. If any index entry does not match
+	 * its record the whole data file is scanned and the index rewritten.
+	 */
+	private void open() throws IOException
+	{
+		data = FileChannel.open(dataPath, StandardOpenOption.CREATE,
+		StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = FileChannel.open(indexPath, StandardOpenOption.CREATE,
+		StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long length = data.size();
+		// a record cut short by a crash is dropped
+		dataEnd = length - length % RECORD_BYTES;
+		remap();
+
+		boolean indexValid = true;
+		long indexedEnd = 0;
+		ByteBuffer entries = ByteBuffer.allocate((int) Math.min(index.size()
+		- index.size() % INDEX_BYTES, Integer.MAX_VALUE - 8));
+		readFully(index, entries, 0);
+		entries.flip();
+		while (entries.remaining() >= INDEX_BYTES)
+		{
+			TileCache.Key key = new TileCache.Key(entries.getInt(),
+			entries.getLong(), entries.getLong(), entries.getInt(),
+			entries.getDouble(), entries.getInt(), entries.getInt() != 0);
+			long offset = entries.getLong();
+			if (offset < 0 || offset % RECORD_BYTES != 0
+			|| offset + RECORD_BYTES > dataEnd || !keyMatches(offset, key))
+			{
+				indexValid = false;
+				break;
+			}
+			offsets.put(key, new long[] {offset, ++clock});
+			indexedEnd = Math.max(indexedEnd, offset + RECORD_BYTES);
+		}
+		if (!indexValid)
+		{
+			offsets.clear();
+			indexedEnd = 0;
+		}
+
+		// records after the last indexed one were written but never indexed
+		long end = indexedEnd;
+		while (end < dataEnd && readRecord(end, null) != null)
+		{
+			offsets.put(readKey(end), new long[] {end, ++clock});
+			end += RECORD_BYTES;
+		}
+		if (end < dataEnd)
+		{
+			// a damaged record and everything after it are dropped
+			dataEnd = end;
+			data.truncate(dataEnd);
+			remap();
+		}
+		if (!indexValid || end > indexedEnd)
+		{
+			writeIndex(index, offsets);
+		}
+	}
+
+	/**
+	 * Copies the most recently used half of the tiles to a new data file,
+	 * which then replaces the old one along with a new index.
+	 */
+	private void compact() throws IOException
+	{
+		List<Map.Entry<TileCache.Key, long[]>> entries =
+		new ArrayList<>(offsets.entrySet());
+		entries.sort((a, b) -> Long.compare(b.getValue()[1],
+		a.getValue()[1]));
+		int keep = (int) Math.min(entries.size(), cap / 2 / RECORD_BYTES);
+		if (mapped.capacity() < dataEnd) remap();
+
+		Path newDataPath = dataPath.resolveSibling("tiles.dat.tmp");
+		Path newIndexPath = indexPath.resolveSibling("tiles.idx.tmp");
+		Map<TileCache.Key, long[]> kept = new HashMap<>();
+		try (FileChannel newData = FileChannel.open(newDataPath,
+		StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+		StandardOpenOption.WRITE))
+		{
+			long offset = 0;
+			for (int e = 0; e < keep; e++)
+			{
+				long[] location = entries.get(e).getValue();
+				ByteBuffer record = mapped.duplicate();
+				record.position((int) location[0]);
+				record.limit((int) location[0] + RECORD_BYTES);
+				writeFully(newData, record, offset);
+				kept.put(entries.get(e).getKey(), new long[] {offset,
+				location[1]});
+				offset += RECORD_BYTES;
+			}
+			newData.force(true);
+		}
+		try (FileChannel newIndex = FileChannel.open(newIndexPath,
+		StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+		StandardOpenOption.WRITE))
+		{
+			writeIndex(newIndex, kept);
+			newIndex.force(true);
+		}
+		closeFiles();
+		/* if a crash comes between the moves, the old index no longer matches
+		the new data and is rebuilt when the store is next opened */
+		Files.move(newDataPath, dataPath, StandardCopyOption.REPLACE_EXISTING,
+		StandardCopyOption.ATOMIC_MOVE);
+		Files.move(newIndexPath, indexPath,
+		StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		offsets.clear();
+		open();
+		for (Map.Entry<TileCache.Key, long[]> entry : kept.entrySet())
+		{
+			long[] location = offsets.get(entry.getKey());
+			if (location != null) location[1] = entry.getValue()[1];
+		}
+	}
+
+	/**
+	 * Maps the data file up to dataEnd.
+	 */
+	private void remap() throws IOException
+	{
+		if (dataEnd > Integer.MAX_VALUE)
+		{
+			throw new IOException("Tile store is too big to map");
+		}
+		mapped = data.map(FileChannel.MapMode.READ_ONLY, 0, dataEnd);
+	}
+
+	/**
+	 * Reads the record at an offset, checking its magic number and checksum,
+	 * and that it holds the given key if one is given.
+	 *
+	 * @return the iteration values of the record, or null if it is damaged
+	 */
+	private int[][] readRecord(long offset, TileCache.Key key)
+	{
+		try
+		{
+			if (offset + RECORD_BYTES > mapped.capacity()) remap();
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+		if (offset + RECORD_BYTES > mapped.capacity()) return null;
+		ByteBuffer record = mapped.duplicate();
+		record.position((int) offset);
+		record.limit((int) offset + RECORD_BYTES);
+		record = record.slice();
+		if (record.getInt(0) != MAGIC
+		|| record.getInt(HEADER_BYTES - 4) != checksum(record)
+		|| (key != null && !key.equals(readKey(record))))
+		{
+			return null;
+		}
+		int size = TileCache.TILE_SIZE;
+		int[][] tile = new int[size][size];
+		record.position(HEADER_BYTES);
+		for (int[] row : tile)
+		{
+			record.asIntBuffer().get(row);
+			record.position(record.position() + 4 * size);
+		}
+		return tile;
+	}
+
+	/**
+	 * Returns true if the record at an offset has a valid header for the
+	 * given key. The checksum is left until the record is read.
+	 */
+	private boolean keyMatches(long offset, TileCache.Key key)
+	{
+		return mapped.getInt((int) offset) == MAGIC
+		&& key.equals(readKey(offset));
+	}
+
+	/**
+	 * Reads the key from the header of the record at an offset.
+	 */
+	private TileCache.Key readKey(long offset)
+	{
+		ByteBuffer record = mapped.duplicate();
+		record.position((int) offset);
+		return readKey(record.slice());
+	}
+
+	/**
+	 * Reads the key from the header of a record starting at position 0.
+	 */
+	private static TileCache.Key readKey(ByteBuffer record)
+	{
+		return new TileCache.Key(record.getInt(4), record.getLong(8),
+		record.getLong(16), record.getInt(24), record.getDouble(28),
+		record.getInt(36), record.getInt(40) != 0);
+	}
+
+	/**
+	 * Returns the checksum of a record starting at position 0, leaving out
+	 * the checksum field itself.
+	 */
+	private static int checksum(ByteBuffer record)
+	{
+		CRC32 crc = new CRC32();
+		ByteBuffer header = record.duplicate();
+		header.position(0).limit(HEADER_BYTES - 4);
+		crc.update(header);
+		ByteBuffer values = record.duplicate();
+		values.position(HEADER_BYTES).limit(RECORD_BYTES);
+		crc.update(values);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Appends the entry of a record to the index file.
+	 */
+	private void appendIndex(TileCache.Key key, long offset) throws IOException
+	{
+		ByteBuffer entry = ByteBuffer.allocate(INDEX_BYTES);
+		putEntry(entry, key, offset);
+		entry.flip();
+		writeFully(index, entry, index.size());
+	}
+
+	/**
+	 * Replaces the contents of an index file with entries for the given
+	 * records.
+	 */
+	private static void writeIndex(FileChannel channel,
+	Map<TileCache.Key, long[]> records) throws IOException
+	{
+		ByteBuffer entries = ByteBuffer.allocate(records.size()
+		* INDEX_BYTES);
+		for (Map.Entry<TileCache.Key, long[]> record : records.entrySet())
+		{
+			putEntry(entries, record.getKey(), record.getValue()[0]);
+		}
+		entries.flip();
+		channel.truncate(0);
+		writeFully(channel, entries, 0);
+	}
+
+	/**
+	 * Puts an index entry into a buffer.
+	 */
+	private static void putEntry(ByteBuffer buffer, TileCache.Key key,
+	long offset)
+	{
+		buffer.putInt(key.getLevel()).putLong(key.getTileX())
+		.putLong(key.getTileY()).putInt(key.getMaxIterations())
+		.putDouble(key.getSqRadius()).putInt(key.getKernel())
+		.putInt(key.getSinglePrecision() ? 1 : 0).putLong(offset);
+	}
+
+	/**
+	 * Writes the whole of a buffer to a channel at a position.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer,
+	long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Reads a channel from a position until a buffer is full or the channel
+	 * ends.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+	long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position);
+			if (read < 0) break;
+			position += read;
+		}
+	}
+}
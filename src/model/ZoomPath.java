@@ -0,0 +1,226 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class describes the frames of a zoom animation through a list of
+ * keyframes, and which frames each frame can be rendered from.
+ *
+ * Between each pair of keyframes the real span changes geometrically, by the
+ * same factor from frame to frame, so the zoom looks steady. The centre
+ * moves so that the point the zoom closes in on stays at the same place in
+ * every frame, which puts each frame exactly inside the frames before it
+ * when zooming in, and after it when zooming out. The maximum iterations
+ * change geometrically too. The imaginary span of a frame follows from its
+ * real span and the size of the frames.
+ *
+ * Every frame about twice as deep as the next key frame towards the deep
+ * end of its segment is a key frame. A key frame is rendered from the next
+ * key frame, and the frames between key frames from the deeper key frame,
+ * so that only the border outside the deeper frame is calculated. The
+ * frames between two key frames do not depend on each other and may be
+ * rendered in parallel.
+ *
+ * @author 170018405
+ * @version 0.1
+ */
+public final class ZoomPath
+{
+	/**
+	 * The difference in log10 of the real spans below which a segment is a
+	 * pan, with no frame inside another.
+	 */
+	private static final double PAN_TOLERANCE = 1e-9;
+
+	/**
+	 * The zoom between neighbouring key frames, as a power of ten.
+	 */
+	private static final double KEY_ZOOM = Math.log10(2);
+
+	private final MandelbrotState[] frames;
+
+	/**
+	 * The frame each frame is rendered from, or -1 if it is rendered in full.
+	 */
+	private final int[] references;
+
+	/**
+	 * Constructs the path through the keyframes.
+	 *
+	 * @param keyframes the views the animation passes through, in order
+	 * @param framesPerSegment the number of frames from one keyframe to the
+	 * next
+	 * @param width the width of the frames in pixels
+	 * @param height the height of the frames in pixels
+	 * @throws IllegalArgumentException if there are fewer than two
+	 * keyframes, or the frames per segment or size are not positive
+	 */
+	public ZoomPath(List<MandelbrotState> keyframes, int framesPerSegment,
+	int width, int height) throws IllegalArgumentException
+	{
+		if (keyframes.size() < 2 || framesPerSegment < 1 || width < 1
+		|| height < 1)
+		{
+			throw new IllegalArgumentException("A zoom needs two keyframes "
+			+ "and a positive number of frames and size");
+		}
+		int segments = keyframes.size() - 1;
+		frames = new MandelbrotState[segments * framesPerSegment + 1];
+		references = new int[frames.length];
+		Arrays.fill(references, -1);
+		for (int s = 0; s < segments; s++)
+		{
+			MandelbrotState from = keyframes.get(s);
+			MandelbrotState to = keyframes.get(s + 1);
+			double fromLog = log10(from.getRealSpan());
+			double toLog = log10(to.getRealSpan());
+			int first = s * framesPerSegment;
+			for (int k = 0; k <= framesPerSegment; k++)
+			{
+				frames[first + k] = frameAt(from, to, fromLog, toLog,
+				(double) k / framesPerSegment, width, height);
+			}
+			if (Math.abs(toLog - fromLog) >= PAN_TOLERANCE)
+			{
+				linkFrames(first, framesPerSegment, toLog < fromLog,
+				Math.abs(toLog - fromLog) / KEY_ZOOM);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of frames, including both ends.
+	 *
+	 * @return the number of frames
+	 */
+	public int getFrameCount()
+	{
+		return frames.length;
+	}
+
+	/**
+	 * Returns the view of a frame.
+	 *
+	 * @param frame the number of the frame, from 0 to getFrameCount() - 1
+	 * @return a copy of the state of the frame
+	 */
+	public MandelbrotState getFrame(int frame)
+	{
+		return new MandelbrotState(frames[frame]);
+	}
+
+	/**
+	 * Returns the deeper frame a frame is rendered from, with
+	 * MandelbrotState.getMandelbrotSetAround.
+	 *
+	 * @param frame the number of the frame, from 0 to getFrameCount() - 1
+	 * @return the number of the frame it is rendered from, or -1 if it is
+	 * rendered in full
+	 */
+	public int getReference(int frame)
+	{
+		return references[frame];
+	}
+
+	/**
+	 * Links the frames of a zooming segment to the key frames they are
+	 * rendered from. Frames are counted from the deep end of the segment,
+	 * where the first key frame is.
+	 *
+	 * @param first the number of the first frame of the segment
+	 * @param framesPerSegment the number of frames in the segment
+	 * @param zoomingIn true if the last frame is the deepest
+	 * @param keyZooms the zoom of the segment in multiples of KEY_ZOOM
+	 */
+	private void linkFrames(int first, int framesPerSegment,
+	boolean zoomingIn, double keyZooms)
+	{
+		int spacing = Math.max(1, (int) (framesPerSegment / keyZooms));
+		for (int k = 0; k <= framesPerSegment; k++)
+		{
+			int depth = zoomingIn ? framesPerSegment - k : k;
+			// the deepest frame of a segment is rendered in full unless the
+			// next segment renders it from one of its own frames
+			if (depth == 0) continue;
+			int key = depth % spacing == 0 ? depth - spacing
+			: depth - depth % spacing;
+			references[first + k] = first + (zoomingIn ? framesPerSegment - key
+			: key);
+		}
+	}
+
+	/**
+	 * Returns the frame a fraction t of the way from one keyframe to the
+	 * next.
+	 */
+	private static MandelbrotState frameAt(MandelbrotState from,
+	MandelbrotState to, double fromLog, double toLog, double t, int width,
+	int height)
+	{
+		BigDecimal fromSpan = from.getRealSpan();
+		BigDecimal toSpan = to.getRealSpan();
+		BigDecimal span;
+		BigDecimal fraction;
+		if (t == 0 || t == 1)
+		{
+			span = t == 0 ? fromSpan : toSpan;
+			fraction = BigDecimal.valueOf(t);
+		}
+		else if (Math.abs(toLog - fromLog) < PAN_TOLERANCE)
+		{
+			span = fromSpan;
+			fraction = BigDecimal.valueOf(t);
+		}
+		else
+		{
+			span = powerOfTen(fromLog + t * (toLog - fromLog));
+			// the centre moves in step with the span, keeping the point
+			// zoomed in on still; digits are kept for the whole zoom so the
+			// centre is exact to a fraction of a pixel at the deep end
+			MathContext mc = new MathContext(MathContext.DECIMAL128
+			.getPrecision() + (int) Math.ceil(Math.abs(toLog - fromLog)));
+			fraction = span.subtract(fromSpan).divide(toSpan.subtract(
+			fromSpan), mc);
+		}
+		BigDecimal centreReal = from.getCentreReal().add(to.getCentreReal()
+		.subtract(from.getCentreReal()).multiply(fraction));
+		BigDecimal centreImaginary = from.getCentreImaginary().add(
+		to.getCentreImaginary().subtract(from.getCentreImaginary())
+		.multiply(fraction));
+		double fromIterations = Math.log(Math.max(from.getMaxIterations(), 1));
+		double toIterations = Math.log(Math.max(to.getMaxIterations(), 1));
+
+		MandelbrotState frame = new MandelbrotState(t == 1 ? to : from);
+		frame.setXRes(width);
+		frame.setYRes(height);
+		frame.setMaxIterations((int) Math.round(Math.exp(fromIterations + t
+		* (toIterations - fromIterations))));
+		frame.setPreciseBounds(centreReal, centreImaginary, span,
+		span.multiply(BigDecimal.valueOf(height)).divide(BigDecimal.valueOf(
+		width), MathContext.DECIMAL64));
+		return frame;
+	}
+
+	/**
+	 * Returns log10 of a positive number, however small.
+	 */
+	private static double log10(BigDecimal number)
+	{
+		int exponent = number.precision() - number.scale() - 1;
+		return exponent + Math.log10(number.movePointLeft(exponent)
+		.doubleValue());
+	}
+
+	/**
+	 * Returns 10 to a power, however small, to double precision.
+	 */
+	private static BigDecimal powerOfTen(double power)
+	{
+		int exponent = (int) Math.floor(power);
+		return BigDecimal.valueOf(Math.pow(10, power - exponent))
+		.scaleByPowerOfTen(exponent);
+	}
+}
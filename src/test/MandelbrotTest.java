@@ -2,6 +2,33 @@ package test;
 
 import model.MandelbrotSetGenerator;
 import model.MandelbrotState;
+import model.RenderJournal;
+import model.SupersampledSet;
+import model.ZoomPath;
+import main.BatchRender;
+import main.ZoomAnimation;
+import guiDelegate.ColorMixer;
+import guiDelegate.ImageExporter;
+
+import java.awt.image.BufferedImage;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.imageio.ImageIO;
 
 /**
  * This is a test class used to test the functionality of the
@@ -116,5 +143,743 @@ import model.MandelbrotState;
 			System.out.println("Exception thrown");
 		}
 
+
+		// Testing the tiled parallel render gives the same set as the serial render
+		System.out.println("Testing parallel render");
+		MandelbrotState big = new MandelbrotState(613, 401, 500, -2.0, 0.7,
+		-1.25, 1.25, 4.0);
+		int[][] serialSet = big.calcMandelbrotSetSerial(613, 401, -2.0, 0.7,
+		-1.25, 1.25, 500, 4.0);
+		System.out.println(sameSet(serialSet, big.getMandelbrotSet())
+		? "pass" : "fail");
+
+		// Testing rows mirrored about the real axis match the unmirrored
+		// render, for a view symmetric about the axis and for views where only
+		// some rows, or none, have a mirror
+		System.out.println("Testing mirrored rows");
+		MandelbrotState mirrored = new MandelbrotState(300, 256);
+		int[][] symmetricSet = mirrored.calcMandelbrotSet(300, 256, -2.0, 0.7,
+		-1.0, 1.0, 500, 4.0);
+		boolean mirrorsMatch = sameSet(symmetricSet,
+		mirrored.calcMandelbrotSetSerial(300, 256, -2.0, 0.7, -1.0, 1.0, 500,
+		4.0));
+		mirrorsMatch &= sameSet(mirrored.calcMandelbrotSet(300, 384, -2.0, 0.7,
+		-0.5, 1.0, 500, 4.0), mirrored.calcMandelbrotSetSerial(300, 384, -2.0,
+		0.7, -0.5, 1.0, 500, 4.0));
+		mirrorsMatch &= sameSet(mirrored.calcMandelbrotSet(300, 250, -2.0, 0.7,
+		-0.6, 1.1, 500, 4.0), mirrored.calcMandelbrotSetSerial(300, 250, -2.0,
+		0.7, -0.6, 1.1, 500, 4.0));
+		for (int y = 1; y < 128; y++)
+		{
+			mirrorsMatch &= Arrays.equals(symmetricSet[y], symmetricSet[256 - y]);
+		}
+		System.out.println(mirrorsMatch ? "pass" : "fail");
+
+		// Testing the scalar kernel gives the same set as the batched kernel
+		System.out.println("Testing scalar kernel");
+		big.setKernel(MandelbrotState.SCALAR_KERNEL);
+		System.out.println(sameSet(serialSet, big.getMandelbrotSet())
+		? "pass" : "fail");
+
+		// Testing the set is unchanged without the interior fast paths
+		System.out.println("Testing interior checks");
+		big.setInteriorCheck(false);
+		big.setPeriodicityCheck(false);
+		int[][] bruteSet = big.getMandelbrotSet();
+		big.setInteriorCheck(true);
+		big.setPeriodicityCheck(true);
+		big.setKernel(MandelbrotState.BATCHED_KERNEL);
+		System.out.println(sameSet(bruteSet, big.getMandelbrotSet())
+		? "pass" : "fail");
+
+		// Testing single precision is off by default, and only changes a few
+		// pixels near the edge when switched on
+		System.out.println("Testing single precision");
+		System.out.println(!big.getSinglePrecision() ? "pass" : "fail");
+		big.setSinglePrecision(true);
+		int floatDiff = countDifferences(big.getMandelbrotSet(), bruteSet);
+		System.out.println(floatDiff < 613 * 401 / 100 ? "pass" : "fail");
+		big.setSinglePrecision(false);
+
+		// Testing subdivision against brute force, a few pixels of missed
+		// detail are expected
+		System.out.println("Testing subdivision render");
+		big.setRenderMode(MandelbrotState.SUBDIVISION_RENDER);
+		big.setVerifySubdivision(true);
+		big.getMandelbrotSet();
+		System.out.println(big.getSubdivisionMismatches()
+		+ " pixels differ from brute force");
+		big.setRenderMode(MandelbrotState.BRUTE_FORCE_RENDER);
+
+		// Testing a progressive render ends with the brute force set after
+		// three coarse passes
+		System.out.println("Testing progressive render");
+		int[] passes = {0};
+		int[][] progressiveSet = big.calcMandelbrotSetProgressive(613, 401,
+		-2.0, 0.7, -1.25, 1.25, 500, 4.0, partialSet -> passes[0]++);
+		boolean progressiveMatches = sameSet(bruteSet, progressiveSet)
+		&& passes[0] == 3;
+		// and with floats, mirrored rows and subdivision it still ends with the
+		// set the other renders give
+		big.setSinglePrecision(true);
+		progressiveMatches &= sameSet(big.calcMandelbrotSet(613, 400, -2.0,
+		0.7, -1.25, 1.25, 500, 4.0), big.calcMandelbrotSetProgressive(613, 400,
+		-2.0, 0.7, -1.25, 1.25, 500, 4.0, partialSet -> { }));
+		big.setSinglePrecision(false);
+		big.setRenderMode(MandelbrotState.SUBDIVISION_RENDER);
+		progressiveMatches &= sameSet(big.getMandelbrotSet(),
+		big.calcMandelbrotSetProgressive(613, 401, -2.0, 0.7, -1.25, 1.25, 500,
+		4.0, partialSet -> { }));
+		big.setRenderMode(MandelbrotState.BRUTE_FORCE_RENDER);
+		System.out.println(progressiveMatches ? "pass" : "fail");
+
+		// Testing a pan by whole pixels keeps the overlapping pixels, and gives
+		// exactly the set of a full render; the first pan snaps the view onto
+		// the grid later pans stay on
+		System.out.println("Testing incremental pan");
+		MandelbrotSetGenerator panning = new MandelbrotSetGenerator(
+		new MandelbrotState(300, 300));
+		panning.setMaxIterations(2000);
+		int[][] beforePan = panning.shiftBounds(-3, 4, 1).join();
+		int[][] afterPan = panning.shiftBounds(10, 5, 1).join();
+		boolean kept = true;
+		for (int j = 0; j < 295; j++)
+		{
+			for (int i = 0; i < 290; i++)
+			{
+				kept &= afterPan[j][i] == beforePan[j + 5][i + 10];
+			}
+		}
+		System.out.println(kept && sameSet(afterPan,
+		panning.getState().getMandelbrotSet()) ? "pass" : "fail");
+
+		// Testing a zoom out by a whole factor reuses every pixel of the
+		// previous set, and only calculates the new border: pixel j of the new
+		// view is at pixel 2 * j - 150 of the previous view
+		System.out.println("Testing zoom out reuse");
+		int[][] beforeZoom = panning.getSet();
+		MandelbrotState shown = panning.getState();
+		double width = shown.getMaxReal() - shown.getMinReal();
+		double height = shown.getMaximaginary() - shown.getMinimaginary();
+		int[][] zoomedOut = panning.setBounds(shown.getMinReal() - width
+		/ 2, shown.getMaxReal() + width / 2, shown.getMinimaginary()
+		- height / 2, shown.getMaximaginary() + height / 2).join();
+		boolean reused = true;
+		for (int j = 75; j < 225; j++)
+		{
+			for (int i = 75; i < 225; i++)
+			{
+				reused &= zoomedOut[j][i] == beforeZoom[2 * j - 150][2 * i
+				- 150];
+			}
+		}
+		System.out.println(reused && sameSet(zoomedOut,
+		panning.getState().getMandelbrotSet()) ? "pass" : "fail");
+
+		// Testing a zoom in is previewed with the enlarged previous set
+		System.out.println("Testing zoom preview");
+		int[][][] preview = new int[1][][];
+		panning.addObserver(event ->
+		{
+			if (preview[0] == null && event.getPropertyName().equals(
+			"partialMandelbrotSet"))
+			{
+				preview[0] = (int[][]) event.getNewValue();
+			}
+		});
+		panning.renderBetween(10, 10, 110, 110);
+		System.out.println(preview[0] != null && preview[0][0][0]
+		== zoomedOut[10][10] && preview[0][299][299] == zoomedOut[110][110]
+		? "pass" : "fail");
+
+		// Testing raising the maximum iterations step by step carries on the
+		// orbits, and lowering it again needs no iterating at all; the first
+		// raise starts from the full render and the later ones from the saved
+		// orbits, including those of pixels which escaped on the last iteration
+		System.out.println("Testing resumed iterations");
+		MandelbrotSetGenerator deepening = new MandelbrotSetGenerator(
+		new MandelbrotState(300, 300));
+		deepening.setMaxIterations(100);
+		boolean resumedOk = sameSet(deepening.setMaxIterations(500).join(),
+		deepening.getState().getMandelbrotSet());
+		int[][] resumed = deepening.setMaxIterations(2000).join();
+		resumedOk &= sameSet(resumed, deepening.getState().getMandelbrotSet());
+		int[][] lowered = deepening.setMaxIterations(200).join();
+		for (int j = 0; j < 300; j++)
+		{
+			for (int i = 0; i < 300; i++)
+			{
+				resumedOk &= lowered[j][i] == Math.min(resumed[j][i], 200);
+			}
+		}
+		System.out.println(resumedOk ? "pass" : "fail");
+
+		// Testing states describing the same set are equal, and undo and
+		// redo back to recent views come from the render cache
+		System.out.println("Testing render cache");
+		MandelbrotState home = new MandelbrotState(300, 300);
+		MandelbrotState same = new MandelbrotState(home);
+		boolean equalStates = home.equals(same)
+		&& home.hashCode() == same.hashCode();
+		same.setMaxIterations(51);
+		equalStates &= !home.equals(same);
+		MandelbrotSetGenerator caching = new MandelbrotSetGenerator(home);
+		int[][] homeSet = caching.getSet();
+		caching.setMaxIterations(1000);
+		caching.renderBetween(100, 100, 200, 200);
+		long hits = caching.getCacheHits();
+		caching.undoState();
+		caching.undoState();
+		caching.redoState();
+		caching.reset();
+		System.out.println(equalStates && caching.getCacheHits() == hits + 4
+		&& sameSet(caching.getSet(), homeSet) ? "pass" : "fail");
+
+		// Testing a change of render mode on an unchanged view renders the
+		// view again in the new mode rather than taking the cached set
+		System.out.println("Testing render mode change");
+		MandelbrotSetGenerator switching = new MandelbrotSetGenerator(
+		new MandelbrotState(300, 300));
+		switching.setMaxIterations(500);
+		int[][] bruteForce = switching.getSet();
+		int[][] fromTiles = switching.setRenderMode(
+		MandelbrotState.CACHED_TILE_RENDER).join();
+		boolean switched = countDifferences(fromTiles, bruteForce) > 0
+		&& sameSet(fromTiles, switching.getState().getMandelbrotSet());
+		switched &= sameSet(switching.setRenderMode(
+		MandelbrotState.BRUTE_FORCE_RENDER).join(), bruteForce);
+		switching.undoState();
+		switched &= sameSet(switching.getSet(), fromTiles);
+		System.out.println(switched ? "pass" : "fail");
+
+		// Testing views rendered speculatively while idle are used without
+		// rendering, and a change cancels the speculation
+		System.out.println("Testing speculative render");
+		MandelbrotSetGenerator speculating = new MandelbrotSetGenerator(
+		new MandelbrotState(300, 300));
+		speculating.setSpeculative(true);
+		speculating.setMaxIterations(500);
+		while (speculating.isSpeculating())
+		{
+			Thread.yield();
+		}
+		int rendered = speculating.getSpeculationsRendered();
+		long misses = speculating.getCacheMisses();
+		int[][] speculatedPan = speculating.shiftBounds(75, 0, 1).join();
+		boolean speculatedOk = rendered == 5
+		&& speculating.getSpeculationsUsed() == 1
+		&& speculating.getCacheMisses() == misses + 1
+		&& sameSet(speculatedPan, speculating.getState().getMandelbrotSet());
+		speculating.setMaxIterations(2000);
+		speculating.setMaxIterations(500);
+		speculating.setSpeculative(false);
+		while (speculating.isSpeculating())
+		{
+			Thread.yield();
+		}
+		System.out.println(speculatedOk && speculating.getSpeculationReport()
+		.startsWith("pan 1/") ? "pass" : "fail");
+
+		// Testing cached sets are compressed, so a budget of two plain sets
+		// holds every view of a walk, and they decode to the sets rendered
+		System.out.println("Testing compressed cache");
+		MandelbrotSetGenerator walking = new MandelbrotSetGenerator(
+		new MandelbrotState(300, 300));
+		walking.setCacheBudget(2L * 300 * 300 * 4);
+		int[][] walkStart = walking.getSet();
+		for (int k = 0; k < 6; k++)
+		{
+			walking.shiftBounds(37, 11, 1);
+		}
+		long walkHits = walking.getCacheHits();
+		for (int k = 0; k < 6; k++)
+		{
+			walking.undoState();
+		}
+		System.out.println(walking.getCacheHits() == walkHits + 6
+		&& sameSet(walking.getSet(), walkStart) ? "pass" : "fail");
+
+		// Testing automatic iterations give a deep view many more iterations,
+		// settle while panning, and drop back for the whole set
+		System.out.println("Testing auto iterations");
+		MandelbrotSetGenerator tuning = new MandelbrotSetGenerator(
+		new MandelbrotState(200, 200));
+		tuning.setAutoIterations(true);
+		double spiralReal = -0.743643887037151;
+		double spiralImaginary = 0.131825904205330;
+		tuning.setBounds(spiralReal - 1.5e-6, spiralReal + 1.5e-6,
+		spiralImaginary - 1.5e-6, spiralImaginary + 1.5e-6);
+		int deepIterations = tuning.getState().getMaxIterations();
+		int[] panIterations = new int[4];
+		for (int k = 0; k < panIterations.length; k++)
+		{
+			tuning.shiftBounds(5, 0, 1);
+			panIterations[k] = tuning.getState().getMaxIterations();
+		}
+		boolean tuned = deepIterations > 1000 && panIterations[3]
+		== panIterations[2] && panIterations[3] <= 8 * deepIterations;
+		tuning.setBounds(-2.0, 0.7, -1.25, 1.25);
+		tuned = tuned && tuning.getState().getMaxIterations() <= 128;
+		// a view where no pixel escapes keeps the guess from its depth
+		tuning.setBounds(-0.2, -0.1, -0.05, 0.05);
+		tuning.setBounds(-0.2, -0.1, -0.05, 0.05);
+		tuned = tuned && tuning.getState().getMaxIterations() > 2;
+		// a view of no area is not taken as infinitely deep
+		tuning.setBounds(-0.5, -0.5, 0.0, 0.0);
+		System.out.println(tuned && tuning.getState().getMaxIterations()
+		<= 128 ? "pass" : "fail");
+
+		// Testing only edge pixels are supersampled, and their samples are
+		// those of a render at three times the resolution
+		System.out.println("Testing edge supersampling");
+		MandelbrotState sampled = new MandelbrotState(200, 200);
+		sampled.setMaxIterations(200);
+		SupersampledSet edges = sampled.supersample(
+		sampled.getMandelbrotSet(), 3, SupersampledSet.DEFAULT_THRESHOLD);
+		MandelbrotState uniform = new MandelbrotState(600, 600);
+		uniform.setMaxIterations(200);
+		double realShift = (sampled.getMaxReal() - sampled.getMinReal()) / 600;
+		double imaginaryShift = (sampled.getMaximaginary()
+		- sampled.getMinimaginary()) / 600;
+		uniform.setMinReal(sampled.getMinReal() - realShift);
+		uniform.setMaxReal(sampled.getMaxReal() - realShift);
+		uniform.setMinimaginary(sampled.getMinimaginary() - imaginaryShift);
+		uniform.setMaximaginary(sampled.getMaximaginary() - imaginaryShift);
+		int[][] uniformSet = uniform.getMandelbrotSet();
+		int sampleDifferences = 0;
+		for (int e = 0; e < edges.getEdgeCount(); e++)
+		{
+			int x = edges.getEdgePixel(e) % 200;
+			int y = edges.getEdgePixel(e) / 200;
+			for (int k = 0; k < 9; k++)
+			{
+				if (edges.getSample(e, k) != uniformSet[y * 3 + k / 3][x * 3
+				+ k % 3])
+				{
+					sampleDifferences++;
+				}
+			}
+		}
+		System.out.println(edges.getEdgeCount() > 0 && edges.getEdgeCount()
+		< 200 * 200 / 4 && sampleDifferences < edges.getEdgeCount() * 9 / 100
+		? "pass" : "fail");
+
+		// Testing values outside the palette, as a negative maximum
+		// iterations gives, are colored black rather than failing
+		System.out.println("Testing color clamping");
+		try
+		{
+			int[] clamped = new ColorMixer(-5).getPixels(edges,
+			ColorMixer.GREEN);
+			System.out.println(new ColorMixer(-5).getPalette(ColorMixer.RED)
+			.length == 1 && Arrays.stream(clamped).allMatch(color -> color == 0)
+			? "pass" : "fail");
+		}
+		catch (RuntimeException e)
+		{
+			System.out.println("fail");
+		}
+
+		// Testing a view put together from cached tiles can be put together
+		// again, and panned, without calculating the tiles it shares
+		System.out.println("Testing tile cache");
+		MandelbrotState tiled = new MandelbrotState(300, 300);
+		tiled.setMaxIterations(500);
+		tiled.setRenderMode(MandelbrotState.CACHED_TILE_RENDER);
+		int[][] firstTiled = tiled.getMandelbrotSet();
+		long tileMisses = MandelbrotState.getTileCacheMisses();
+		boolean tilesReused = sameSet(firstTiled, tiled.getMandelbrotSet())
+		&& MandelbrotState.getTileCacheMisses() == tileMisses;
+		// tiles calculated with another kernel are not reused
+		MandelbrotState scalarTiled = new MandelbrotState(tiled);
+		scalarTiled.setKernel(MandelbrotState.SCALAR_KERNEL);
+		tileMisses = MandelbrotState.getTileCacheMisses();
+		tilesReused = tilesReused && sameSet(firstTiled,
+		scalarTiled.getMandelbrotSet())
+		&& MandelbrotState.getTileCacheMisses() > tileMisses;
+		MandelbrotSetGenerator tilePanning = new MandelbrotSetGenerator(tiled);
+		tileMisses = MandelbrotState.getTileCacheMisses();
+		long tileHits = MandelbrotState.getTileCacheHits();
+		tilePanning.shiftBounds(7, 3, 1);
+		long newTiles = MandelbrotState.getTileCacheMisses() - tileMisses;
+		long oldTiles = MandelbrotState.getTileCacheHits() - tileHits;
+		System.out.println(tilesReused && newTiles < oldTiles
+		? "pass" : "fail");
+
+		// Testing tiles kept on disk are read back once they have gone from
+		// memory, as after a restart
+		System.out.println("Testing tile store");
+		try
+		{
+			Path storeDirectory = Files.createTempDirectory("tiles");
+			MandelbrotState.openTileStore(storeDirectory, 64L * 1024 * 1024);
+			MandelbrotState stored = new MandelbrotState(tiled);
+			stored.setMaxIterations(300);
+			int[][] storedSet = stored.getMandelbrotSet();
+			MandelbrotState.closeTileStore();
+			long budget = MandelbrotState.getTileCacheBudget();
+			MandelbrotState.setTileCacheBudget(0);
+			MandelbrotState.setTileCacheBudget(budget);
+			MandelbrotState.openTileStore(storeDirectory, 64L * 1024 * 1024);
+			tileMisses = MandelbrotState.getTileCacheMisses();
+			boolean storeReused = sameSet(storedSet,
+			stored.getMandelbrotSet())
+			&& MandelbrotState.getTileCacheMisses() == tileMisses;
+			// nor are tiles kept on disk for another precision
+			stored.setSinglePrecision(true);
+			stored.getMandelbrotSet();
+			storeReused = storeReused
+			&& MandelbrotState.getTileCacheMisses() > tileMisses;
+			MandelbrotState.closeTileStore();
+			// a store locked by another program is not opened
+			boolean lockedOut = false;
+			try (FileChannel lockFile = FileChannel.open(
+			storeDirectory.resolve("tiles.lock"), StandardOpenOption.WRITE))
+			{
+				// closing the channel gives up the lock
+				lockFile.lock();
+				try
+				{
+					MandelbrotState.openTileStore(storeDirectory,
+					64L * 1024 * 1024);
+					MandelbrotState.closeTileStore();
+				}
+				catch (IOException e)
+				{
+					lockedOut = true;
+				}
+			}
+			System.out.println(storeReused && lockedOut ? "pass" : "fail");
+		}
+		catch (IOException e)
+		{
+			System.out.println("fail");
+		}
+
+		// Testing the batch renderer writes a PNG for every job, from a job
+		// list and from a saved state, without a GUI
+		System.out.println("Testing batch render");
+		try
+		{
+			Path batchDirectory = Files.createTempDirectory("batch");
+			Path jobList = batchDirectory.resolve("jobs.txt");
+			Files.write(jobList, Arrays.asList("# two jobs",
+			"whole width=60 height=40 maxIterations=100",
+			"spiral width=50 height=50 centreReal=-0.7436 "
+			+ "centreImaginary=0.1318 realSpan=0.004 imaginarySpan=0.004 "
+			+ "color=2 supersample=2"));
+			Path saved = batchDirectory.resolve("saved.ser");
+			try (ObjectOutputStream os = new ObjectOutputStream(
+			Files.newOutputStream(saved)))
+			{
+				os.writeObject(new MandelbrotState(30, 20));
+			}
+			int failures = BatchRender.run(new String[] {"-o",
+			batchDirectory.resolve("out").toString(), "-j", "2", jobList
+			.toString(), saved.toString()}, new PrintStream(
+			OutputStream.nullOutputStream()));
+			BufferedImage whole = ImageIO.read(batchDirectory.resolve(
+			"out/whole.png").toFile());
+			BufferedImage fromSaved = ImageIO.read(batchDirectory.resolve(
+			"out/saved.png").toFile());
+			System.out.println(failures == 0 && whole.getWidth() == 60
+			&& whole.getHeight() == 40 && fromSaved.getWidth() == 30
+			&& Files.exists(batchDirectory.resolve("out/spiral.png"))
+			? "pass" : "fail");
+		}
+		catch (IOException e)
+		{
+			System.out.println("fail");
+		}
+
+		// Testing an export streamed in strips gives the same image as the
+		// whole view rendered at once, but for rounding at a few pixels
+		System.out.println("Testing strip export");
+		try
+		{
+			Path exported = Files.createTempFile("export", ".png");
+			MandelbrotState poster = new MandelbrotState(1200, 900);
+			ImageExporter.export(poster, 1200, 900, ColorMixer.GREEN, 1,
+			exported);
+			BufferedImage image = ImageIO.read(exported.toFile());
+			int[] posterPixels = new ColorMixer(poster.getMaxIterations())
+			.getPixels(poster.supersample(poster.getMandelbrotSet(), 1, 0),
+			ColorMixer.GREEN);
+			int pixelDifferences = 0;
+			for (int p = 0; p < posterPixels.length; p++)
+			{
+				if ((image.getRGB(p % 1200, p / 1200) & 0xffffff)
+				!= posterPixels[p])
+				{
+					pixelDifferences++;
+				}
+			}
+			System.out.println(image.getWidth() == 1200 && image.getHeight()
+			== 900 && pixelDifferences < posterPixels.length / 100
+			? "pass" : "fail");
+		}
+		catch (IOException e)
+		{
+			System.out.println("fail");
+		}
+
+		// Testing checkpointed renders: a render cut short or damaged on disk
+		// must lose at most the tiles after the damage, and resume to exactly
+		// the same set
+		System.out.println("Testing checkpointed render");
+		try
+		{
+			Path checkpoint = Files.createTempFile("render", ".journal");
+			MandelbrotState longRender = new MandelbrotState(300, 300);
+			longRender.setMaxIterations(500);
+			int[][] uninterrupted = longRender.getMandelbrotSetCheckpointed(
+			checkpoint, null);
+			int[][] direct = longRender.getMandelbrotSet();
+			int differences = 0;
+			for (int y = 0; y < 300; y++)
+			{
+				for (int x = 0; x < 300; x++)
+				{
+					if (uninterrupted[y][x] != direct[y][x]) differences++;
+				}
+			}
+			boolean passed = differences < 300 * 300 / 100;
+			// cut the last tile short, as a crash while writing it would
+			long size = Files.size(checkpoint);
+			try (RandomAccessFile file = new RandomAccessFile(
+			checkpoint.toFile(), "rw"))
+			{
+				file.setLength(size - 100);
+			}
+			try (RenderJournal journal = new RenderJournal(checkpoint,
+			longRender, 300, 300))
+			{
+				passed &= journal.getRegionCount() == 3;
+			}
+			passed &= Arrays.deepEquals(uninterrupted,
+			longRender.getMandelbrotSetCheckpointed(checkpoint, null));
+			// damage a value of the second tile
+			try (RandomAccessFile file = new RandomAccessFile(
+			checkpoint.toFile(), "rw"))
+			{
+				long damaged = size - (24 + 4 * 44 * 44) - (24 + 4 * 256 * 44)
+				- 100;
+				file.seek(damaged);
+				int value = file.read();
+				file.seek(damaged);
+				file.write(value ^ 0xff);
+			}
+			try (RenderJournal journal = new RenderJournal(checkpoint,
+			longRender, 300, 300))
+			{
+				passed &= journal.getRegionCount() == 1;
+			}
+			passed &= Arrays.deepEquals(uninterrupted,
+			longRender.getMandelbrotSetCheckpointed(checkpoint, null));
+			// a header cut short holds no checkpoint, and is written again
+			try (RandomAccessFile file = new RandomAccessFile(
+			checkpoint.toFile(), "rw"))
+			{
+				file.setLength(10);
+			}
+			try (RenderJournal journal = new RenderJournal(checkpoint,
+			longRender, 300, 300))
+			{
+				passed &= journal.getRegionCount() == 0;
+			}
+			passed &= Arrays.deepEquals(uninterrupted,
+			longRender.getMandelbrotSetCheckpointed(checkpoint, null));
+			// a stopped render throws, and the file of another view is refused
+			try
+			{
+				Files.delete(checkpoint);
+				longRender.getMandelbrotSetCheckpointed(checkpoint,
+				new AtomicBoolean(true));
+				passed = false;
+			}
+			catch (CancellationException e)
+			{
+				passed &= Files.exists(checkpoint);
+			}
+			try
+			{
+				new RenderJournal(checkpoint, longRender, 200, 300).close();
+				passed = false;
+			}
+			catch (IOException e)
+			{
+				// expected
+			}
+			MandelbrotState scalarRender = new MandelbrotState(longRender);
+			scalarRender.setKernel(MandelbrotState.SCALAR_KERNEL);
+			try
+			{
+				new RenderJournal(checkpoint, scalarRender, 300, 300).close();
+				passed = false;
+			}
+			catch (IOException e)
+			{
+				// expected
+			}
+			Files.delete(checkpoint);
+			System.out.println(passed ? "pass" : "fail");
+		}
+		catch (IOException e)
+		{
+			System.out.println("fail");
+		}
+
+		// Testing a zoom animation: frames rendered from a deeper frame must
+		// nearly match frames rendered in full, differing only where the
+		// nearest deeper pixel lands on another band, and every frame is
+		// written
+		System.out.println("Testing zoom animation");
+		try
+		{
+			MandelbrotState wide = new MandelbrotState(160, 120);
+			MandelbrotState deep = new MandelbrotState(160, 120);
+			deep.setMaxIterations(400);
+			deep.setPreciseBounds(new BigDecimal("-0.7436"),
+			new BigDecimal("0.1318"), new BigDecimal("0.01"),
+			new BigDecimal("0.0075"));
+			ZoomPath zoom = new ZoomPath(Arrays.asList(wide, deep), 24, 160,
+			120);
+			boolean passed = zoom.getFrameCount() == 25
+			&& zoom.getReference(24) == -1
+			&& zoom.getFrame(24).getCentreReal().compareTo(
+			deep.getCentreReal()) == 0
+			&& zoom.getFrame(0).getMinReal() == wide.getMinReal()
+			&& zoom.getFrame(0).getMaxReal() == wide.getMaxReal();
+			int frameDifferences = 0;
+			for (int f = 0; f < 24; f++)
+			{
+				int reference = zoom.getReference(f);
+				passed &= reference > f;
+				MandelbrotState frame = zoom.getFrame(f);
+				MandelbrotState from = zoom.getFrame(reference);
+				int[][] around = frame.getMandelbrotSetAround(from,
+				from.getMandelbrotSet());
+				int[][] full = frame.getMandelbrotSet();
+				for (int y = 0; y < 120; y++)
+				{
+					for (int x = 0; x < 160; x++)
+					{
+						if (around[y][x] != full[y][x]) frameDifferences++;
+					}
+				}
+			}
+			passed &= frameDifferences < 24 * 160 * 120 / 8;
+			Path frames = Files.createTempDirectory("zoom");
+			passed &= ZoomAnimation.render(zoom, frames, 2, ColorMixer.GREEN,
+			new PrintStream(OutputStream.nullOutputStream())) == 0;
+			BufferedImage last = ImageIO.read(frames.resolve("frame00024.png")
+			.toFile());
+			passed &= last.getWidth() == 160 && last.getHeight() == 120
+			&& Files.list(frames).count() == 25;
+			System.out.println(passed ? "pass" : "fail");
+		}
+		catch (IOException e)
+		{
+			System.out.println("fail");
+		}
+
+		// Testing quick asynchronous pans: only the last one has to finish,
+		// and it must give nearly the same set as a full render
+		System.out.println("Testing asynchronous pans");
+		MandelbrotSetGenerator async = new MandelbrotSetGenerator(
+		new MandelbrotState(300, 300));
+		async.setMaxIterations(2000);
+		async.setAsynchronous(true);
+		CompletableFuture<int[][]> lastPan = null;
+		for (int k = 0; k < 5; k++)
+		{
+			lastPan = async.shiftBounds(10, 5, 1);
+		}
+		int[][] asyncSet = lastPan.join();
+		System.out.println(sameSet(asyncSet, async.getState().getMandelbrotSet())
+		&& async.getSet() == asyncSet ? "pass" : "fail");
+
+		// Testing an asynchronous progressive render, as the GUI makes, shows
+		// the coarse passes and ends with the same set as a full render
+		System.out.println("Testing asynchronous progressive render");
+		MandelbrotSetGenerator previewing = new MandelbrotSetGenerator(
+		new MandelbrotState(300, 300));
+		previewing.setAsynchronous(true);
+		previewing.setProgressive(true);
+		int[] partialSets = {0};
+		previewing.addObserver(event ->
+		{
+			if (event.getPropertyName().equals("partialMandelbrotSet"))
+			{
+				partialSets[0]++;
+			}
+		});
+		int[][] previewed = previewing.setBounds(-1.0, -0.4, 0.1, 0.7).join();
+		System.out.println(sameSet(previewed, previewing.getState()
+		.getMandelbrotSet()) && partialSets[0] >= 3 ? "pass" : "fail");
+
+		// Testing a view far too deep for doubles still shows detail, near
+		// the point i where the set has detail at every scale
+		System.out.println("Testing deep zoom");
+		MandelbrotState deep = new MandelbrotState(100, 100);
+		deep.setMaxIterations(500);
+		deep.setPreciseBounds(new BigDecimal("1e-40"), BigDecimal.ONE,
+		new BigDecimal("1e-30"), new BigDecimal("1e-30"));
+		System.out.println(countValues(deep.getMandelbrotSet()) > 10
+		? "pass" : "fail");
+	}
+
+	/**
+	 * Returns the number of pixels at which two sets of the same dimensions
+	 * have different iteration values.
+	 *
+	 * @param a the first set
+	 * @param b the second set
+	 * @return the number of differing pixels
+	 */
+	private static int countDifferences(int[][] a, int[][] b)
+	{
+		int count = 0;
+		for (int j = 0; j < a.length; j++)
+		{
+			for (int i = 0; i < a[j].length; i++)
+			{
+				if (a[j][i] != b[j][i]) count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns true if both sets have the same dimensions and iteration values.
+	 *
+	 * @param a the first set
+	 * @param b the second set
+	 * @return true if the sets are identical
+	 */
+	private static boolean sameSet(int[][] a, int[][] b)
+	{
+		if (a.length != b.length) return false;
+		for (int j = 0; j < a.length; j++)
+		{
+			if (!Arrays.equals(a[j], b[j])) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of different iteration values in a set.
+	 *
+	 * @param set the set to count
+	 * @return the number of distinct values
+	 */
+	private static int countValues(int[][] set)
+	{
+		Set<Integer> values = new HashSet<>();
+		for (int[] row : set)
+		{
+			for (int value : row) values.add(value);
+		}
+		return values.size();
 	}
 }